@@ -1,9 +1,31 @@
 package net.sourceforge.pagesdialect;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import net.sourceforge.pagesdialect.commands.ExportPerformer;
+import net.sourceforge.pagesdialect.processors.ExportAttrProcessor;
+import net.sourceforge.pagesdialect.processors.ExportFastPathProcessor;
+import net.sourceforge.pagesdialect.processors.PaginateAttrProcessor;
+import net.sourceforge.pagesdialect.processors.PaginatedAttrProcessor;
+import net.sourceforge.pagesdialect.processors.SeparateAttrProcessor;
+import net.sourceforge.pagesdialect.processors.SortAttrProcessor;
+import net.sourceforge.pagesdialect.processors.SortLinkAttrProcessor;
+import net.sourceforge.pagesdialect.util.IndexedDataset;
+import net.sourceforge.pagesdialect.util.ListSorter;
+import net.sourceforge.pagesdialect.util.MessageCache;
+import net.sourceforge.pagesdialect.util.NavigationBarCache;
+import net.sourceforge.pagesdialect.util.SortCache;
+import net.sourceforge.pagesdialect.util.SortKeyExtractor;
+import net.sourceforge.pagesdialect.util.TypeFormatter;
+import net.sourceforge.pagesdialect.util.TypeFormatterRegistry;
 import org.thymeleaf.dialect.AbstractXHTMLEnabledDialect;
 import org.thymeleaf.processor.IProcessor;
 import org.thymeleaf.standard.processor.attr.StandardEachAttrProcessor;
@@ -19,34 +41,91 @@ public class PagesDialect extends AbstractXHTMLEnabledDialect {
     public static final int PAGINATE_ATTR_PRECEDENCE = StandardEachAttrProcessor.ATTR_PRECEDENCE - 1; // Need to be run before th:each processor
     public static final int EXPORT_ATTR_PRECEDENCE = PAGINATE_ATTR_PRECEDENCE - 1; // Run before pages:paginate processor and after pages:sort processor
     public static final int SORT_ATTR_PRECEDENCE = StandardTextAttrProcessor.ATTR_PRECEDENCE + 1; // Need to be run after th:text processor
+    public static final int EXPORT_FAST_PATH_PRECEDENCE = 0; // Run before any processor of the html element
+
+    // Attribute names of processors looked up by other processors
+    public static final String PAGINATE_ATTR_NAME = "paginate";
 
     // Default value por page requests parameter
     public static final String PAGE_PARAMETER_DEFAULT = "page";
 
+    // Default value for page size requests parameter
+    public static final String PAGE_SIZE_PARAMETER_DEFAULT = "pageSize";
+
+    // Default values for keyset pagination requests parameters
+    public static final String AFTER_PARAMETER_DEFAULT = "after";
+    public static final String BEFORE_PARAMETER_DEFAULT = "before";
+
+    // Default values for sort requests parameters
+    public static final String SORT_PARAMETER_DEFAULT = "sort";
+    public static final String SORT_TYPE_PARAMETER_DEFAULT = "sortType";
+
+    // Default minimum list size to sort in parallel, if a sort executor is set. Below it, splitting and merging
+    // ranges costs more than it saves: 5000 rows sort about 1.7 times slower in parallel, while from 20000 rows
+    // the overhead stays under 10% even without spare cores. Measure with IndexSorterBenchmark.
+    public static final int PARALLEL_SORT_THRESHOLD_DEFAULT = 20000;
+
+    // Default values for the sort cache, which is disabled unless sortCacheSize is set
+    public static final long SORT_CACHE_TTL_DEFAULT = 300; // seconds
+    public static final String SORT_VERSION_VARIABLE_DEFAULT = "sortVersion";
+
     // Configuration attributes to override default parameters.
     public static final String PAGE_PARAMETER = "pageParameter";
+    public static final String PAGE_SIZE_PARAMETER = "pageSizeParameter";
+    public static final String PAGE_SIZES = "pageSizes";
+    public static final String MAX_PAGE_SIZE = "maxPageSize";
+    public static final String AFTER_PARAMETER = "afterParameter";
+    public static final String BEFORE_PARAMETER = "beforeParameter";
     public static final String SORT_PARAMETER = "sortParameter";
     public static final String SORT_TYPE_PARAMETER = "sortTypeParameter";
+    public static final String MULTI_SORT = "multiSort";
+    public static final String PAGINATE_WINDOW = "paginateWindow";
+    public static final String LINK_HEADERS = "linkHeaders";
+    public static final String PREFETCH_LINKS = "prefetchLinks";
+    public static final String PARALLEL_SORT_THRESHOLD = "parallelSortThreshold";
+    public static final String SORT_CACHE_SIZE = "sortCacheSize";
+    public static final String SORT_CACHE_TTL = "sortCacheTtl";
+    public static final String SORT_VERSION_VARIABLE = "sortVersionVariable";
+    public static final String NAVIGATION_BAR_CACHE_SIZE = "navigationBarCacheSize";
     public static final String EXPORT_DIV_ID = "exportDivId";
+    public static final String EXPORT_FAST_PATH = "exportFastPath";
+    public static final String EXPORT_GZIP = "exportGzip";
 
     // i18n keys. Can be overriden by configuration.
     public static final String I18N_ONE_RESULT = "pagesdialect.oneResult";
     public static final String I18N_RESULTS = "pagesdialect.results";
+    public static final String I18N_SHOWING = "pagesdialect.showing";
     public static final String I18N_PREVIOUS = "pagesdialect.previous";
     public static final String I18N_NEXT = "pagesdialect.next";
     public static final String I18N_PAGE = "pagesdialect.page";
     public static final String I18N_FIRST = "pagesdialect.first";
+    public static final String I18N_PAGE_SIZES = "pagesdialect.pageSizes";
     public static final String I18N_LAST = "pagesdialect.last";
     public static final String I18N_NONE = "pagesdialect.none";
     public static final String I18N_EXPORT_PDF = "pagesdialect.exportPdf";
     public static final String I18N_EXPORT_EXCEL = "pagesdialect.exportExcel";
+    public static final String I18N_EXPORT_CSV = "pagesdialect.exportCsv";
 
     private Map<String, String> properties = new HashMap<String, String>();
 
     private Set<TypeFormatter> typeFormatters;
 
+    private TypeFormatterRegistry typeFormatterRegistry = new TypeFormatterRegistry(null);
+
+    private ExecutorService sortExecutor;
+
+    private volatile SortCache sortCache;
+
+    private NavigationBarCache navigationBarCache;
+
+
+    private final MessageCache messageCache = new MessageCache();
+
+    private final ConcurrentMap<String, IndexedDataset> datasets = new ConcurrentHashMap<String, IndexedDataset>();
+
     public void setProperties(Map<String, String> properties) {
         this.properties = properties;
+        this.sortCache = createSortCache();
     }
 
     public Map<String, String> getProperties() {
@@ -55,12 +134,56 @@ public class PagesDialect extends AbstractXHTMLEnabledDialect {
 
     public void setTypeFormatters(Set<TypeFormatter> typeFormatters) {
         this.typeFormatters = typeFormatters;
+        this.typeFormatterRegistry = new TypeFormatterRegistry(typeFormatters);
     }
 
     public Set<TypeFormatter> getTypeFormatters() {
         return typeFormatters;
     }
 
+    /**
+     * Returns the formatter lookup with cached resolution per class, shared by sorting and exporting.
+     */
+    public TypeFormatterRegistry getTypeFormatterRegistry() {
+        return typeFormatterRegistry;
+    }
+
+    /**
+     * Returns the cache of rendered navigation bars shared among requests, or null if the navigationBarCacheSize
+     * property is not set.
+     */
+    public synchronized NavigationBarCache getNavigationBarCache() {
+        if (navigationBarCache == null && properties.containsKey(PagesDialect.NAVIGATION_BAR_CACHE_SIZE)) {
+            navigationBarCache = new NavigationBarCache(Integer.parseInt(properties.get(PagesDialect.NAVIGATION_BAR_CACHE_SIZE)));
+        }
+        return navigationBarCache;
+    }
+
+    /**
+     * Returns the cache of navigation and export labels.
+     */
+    public MessageCache getMessageCache() {
+        return messageCache;
+    }
+
+    /**
+     * Loads the bundled messages for every bundled locale, as in, from a Spring init-method.
+     */
+    public void warmUpMessages() {
+        messageCache.warmUp(Locale.ENGLISH, new Locale("ca"), new Locale("es"), new Locale("gl"));
+    }
+
+    /**
+     * Set a shared executor to sort large lists in parallel. If not set, lists are sorted in the request thread.
+     */
+    public void setSortExecutor(ExecutorService sortExecutor) {
+        this.sortExecutor = sortExecutor;
+    }
+
+    public ExecutorService getSortExecutor() {
+        return sortExecutor;
+    }
+
     @Override
     public String getPrefix() {
         return "pages";
@@ -69,13 +192,17 @@ public class PagesDialect extends AbstractXHTMLEnabledDialect {
     @Override
     public Set<IProcessor> getProcessors() {
         Set<IProcessor> attrProcessors = new HashSet<IProcessor>();
-        attrProcessors.add(new PaginateAttrProcessor("paginate", this));
+        attrProcessors.add(new PaginateAttrProcessor(PAGINATE_ATTR_NAME, this));
         attrProcessors.add(new PaginatedAttrProcessor("paginated", this));
         attrProcessors.add(new SortLinkAttrProcessor("sortLink", this));
         attrProcessors.add(new SortAttrProcessor("sort", this));
         attrProcessors.add(new ExportAttrProcessor("pdf", this, ExportPerformer.PDF_FORMAT));
         attrProcessors.add(new ExportAttrProcessor("excel", this, ExportPerformer.EXCEL_FORMAT));
+        attrProcessors.add(new ExportAttrProcessor("csv", this, ExportPerformer.CSV_FORMAT));
         attrProcessors.add(new SeparateAttrProcessor("separate"));
+        if (isExportFastPath()) {
+            attrProcessors.add(new ExportFastPathProcessor(this));
+        }
         return attrProcessors;
     }
     
@@ -86,4 +213,181 @@ public class PagesDialect extends AbstractXHTMLEnabledDialect {
             return PAGE_PARAMETER_DEFAULT;
         }
     }
+
+    public String getPageSizeParameter() {
+        if (properties.containsKey(PagesDialect.PAGE_SIZE_PARAMETER)) {
+            return properties.get(PagesDialect.PAGE_SIZE_PARAMETER);
+        } else {
+            return PAGE_SIZE_PARAMETER_DEFAULT;
+        }
+    }
+
+    /**
+     * Returns the page sizes which can be requested, as in, "10,20,50" property value. Empty if not set.
+     */
+    public List<Integer> getPageSizes() {
+        List<Integer> pageSizes = new ArrayList<Integer>();
+        if (properties.containsKey(PagesDialect.PAGE_SIZES)) {
+            for (String pageSize : properties.get(PagesDialect.PAGE_SIZES).split(",")) {
+                pageSizes.add(Integer.valueOf(pageSize.trim()));
+            }
+        }
+        return pageSizes;
+    }
+
+    /**
+     * Returns the maximum page size, whether requested or set in templates, or 0 if there is no maximum.
+     */
+    public int getMaxPageSize() {
+        if (properties.containsKey(PagesDialect.MAX_PAGE_SIZE)) {
+            return Integer.parseInt(properties.get(PagesDialect.MAX_PAGE_SIZE));
+        } else {
+            return 0;
+        }
+    }
+
+    public String getAfterParameter() {
+        if (properties.containsKey(PagesDialect.AFTER_PARAMETER)) {
+            return properties.get(PagesDialect.AFTER_PARAMETER);
+        } else {
+            return AFTER_PARAMETER_DEFAULT;
+        }
+    }
+
+    public String getBeforeParameter() {
+        if (properties.containsKey(PagesDialect.BEFORE_PARAMETER)) {
+            return properties.get(PagesDialect.BEFORE_PARAMETER);
+        } else {
+            return BEFORE_PARAMETER_DEFAULT;
+        }
+    }
+
+    public String getSortParameter() {
+        if (properties.containsKey(PagesDialect.SORT_PARAMETER)) {
+            return properties.get(PagesDialect.SORT_PARAMETER);
+        } else {
+            return SORT_PARAMETER_DEFAULT;
+        }
+    }
+
+    public String getSortTypeParameter() {
+        if (properties.containsKey(PagesDialect.SORT_TYPE_PARAMETER)) {
+            return properties.get(PagesDialect.SORT_TYPE_PARAMETER);
+        } else {
+            return SORT_TYPE_PARAMETER_DEFAULT;
+        }
+    }
+
+    /**
+     * Returns the number of page links shown at each side of the current page, or 0 to show "Page N of M" text.
+     */
+    public int getPaginateWindow() {
+        if (properties.containsKey(PagesDialect.PAGINATE_WINDOW)) {
+            return Integer.parseInt(properties.get(PagesDialect.PAGINATE_WINDOW));
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns true if export requests only process the exported element, skipping the rest of the template.
+     */
+    public boolean isExportFastPath() {
+        return "true".equals(properties.get(PagesDialect.EXPORT_FAST_PATH));
+    }
+
+    /**
+     * Returns true if CSV exports are compressed when the browser accepts gzip encoding.
+     */
+    public boolean isExportGzip() {
+        return "true".equals(properties.get(PagesDialect.EXPORT_GZIP));
+    }
+
+    public int getParallelSortThreshold() {
+        if (properties.containsKey(PagesDialect.PARALLEL_SORT_THRESHOLD)) {
+            return Integer.parseInt(properties.get(PagesDialect.PARALLEL_SORT_THRESHOLD));
+        } else {
+            return PARALLEL_SORT_THRESHOLD_DEFAULT;
+        }
+    }
+
+    /**
+     * Returns the cache of sorted orders shared among requests, or null if the sortCacheSize property is not set.
+     */
+    public SortCache getSortCache() {
+        return sortCache;
+    }
+
+    private SortCache createSortCache() {
+        if (!properties.containsKey(PagesDialect.SORT_CACHE_SIZE)) {
+            return null;
+        }
+        int maxSize = Integer.parseInt(properties.get(PagesDialect.SORT_CACHE_SIZE));
+        long ttl = SORT_CACHE_TTL_DEFAULT;
+        if (properties.containsKey(PagesDialect.SORT_CACHE_TTL)) {
+            ttl = Long.parseLong(properties.get(PagesDialect.SORT_CACHE_TTL));
+        }
+        return new SortCache(maxSize, ttl * 1000);
+    }
+
+    /**
+     * Returns the name of the context variable holding the version token of sorted lists.
+     */
+    public String getSortVersionVariable() {
+        if (properties.containsKey(PagesDialect.SORT_VERSION_VARIABLE)) {
+            return properties.get(PagesDialect.SORT_VERSION_VARIABLE);
+        } else {
+            return SORT_VERSION_VARIABLE_DEFAULT;
+        }
+    }
+
+    /**
+     * Publishes a list shared among requests, building a sort index for each sortable field, so pages:sort over
+     * the list is a lookup instead of a sort. Publishing again with the same name replaces the dataset and its
+     * indexes. Indexes are built in the sort executor, if set, or else before returning. Each index is sorted in a
+     * single thread, so index building does not wait on the executor it runs in.
+     *
+     * The list returned by {@link IndexedDataset#getList()} is the instance to add to the model.
+     *
+     * @param sortFields fields used in pages:sort attributes for this list.
+     */
+    public IndexedDataset publishDataset(String name, List list, String... sortFields) {
+        final IndexedDataset dataset = new IndexedDataset(name, list, sortFields);
+        dataset.validateSortFields();
+        SortKeyExtractor extractor = new SortKeyExtractor(Locale.getDefault(), typeFormatterRegistry, null);
+        final ListSorter sorter = new ListSorter(extractor, null, getParallelSortThreshold());
+        Runnable indexBuilder = new Runnable() {
+            @Override
+            public void run() {
+                dataset.buildIndexes(sorter, typeFormatterRegistry, Locale.getDefault());
+            }
+        };
+        if (sortExecutor != null) {
+            sortExecutor.execute(indexBuilder);
+        } else {
+            indexBuilder.run();
+        }
+        datasets.put(name, dataset);
+        return dataset;
+    }
+
+    public IndexedDataset getDataset(String name) {
+        return datasets.get(name);
+    }
+
+    public void removeDataset(String name) {
+        datasets.remove(name);
+    }
+
+    /**
+     * Returns the published dataset whose list is provided instance, or null if not found.
+     */
+    public IndexedDataset findDataset(List list) {
+        for (IndexedDataset dataset : datasets.values()) {
+            if (dataset.getList() == list) {
+                return dataset;
+            }
+        }
+        return null;
+    }
 }
@@ -1,20 +1,18 @@
 package net.sourceforge.pagesdialect.commands;
 
-import net.sourceforge.pagesdialect.util.ExportFilter;
 import net.sourceforge.pagesdialect.util.IterationListFinder;
 import net.sourceforge.pagesdialect.util.IterationListPreparer;
 import net.sourceforge.pagesdialect.PagesDialect;
 import net.sourceforge.pagesdialect.util.PagesDialectUtil;
 import net.sourceforge.pagesdialect.util.RecoverablePagedListHolder;
+import net.sourceforge.pagesdialect.util.RequestUrlBuilder;
 import org.thymeleaf.Arguments;
 import org.thymeleaf.context.IWebContext;
 import org.thymeleaf.dom.DOMSelector;
 import org.thymeleaf.dom.Element;
 import org.thymeleaf.dom.Node;
 import org.thymeleaf.dom.Text;
-import org.thymeleaf.util.MessageResolutionUtils;
 
-import javax.servlet.FilterRegistration;
 import javax.servlet.http.HttpServletRequest;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -51,6 +49,9 @@ public class ExportCommand {
         } else if (ExportPerformer.EXCEL_FORMAT.equals(format)) {
             this.exportLinkClass = "export-excel";
             this.i18Export = PagesDialect.I18N_EXPORT_EXCEL;
+        } else if (ExportPerformer.CSV_FORMAT.equals(format)) {
+            this.exportLinkClass = "export-csv";
+            this.i18Export = PagesDialect.I18N_EXPORT_CSV;
         } else {
             throw new IllegalArgumentException("Export format not recognized");
         }
@@ -60,14 +61,18 @@ public class ExportCommand {
 
     public void execute() {
         HttpServletRequest request = ((IWebContext) arguments.getContext()).getHttpServletRequest();
-        // Get iteration list
-        Collection list = findOriginalList(request);
-        if (!list.isEmpty()) {
+        if (!isIterationEmpty()) {
             if (this.format.equals(request.getParameter(exportParam))) {
-                // Store list information for filter
+                // Store list information for filter. Only export requests read the whole iteration list.
                 request.setAttribute(ExportPerformer.EXPORT_TYPE_FORMATTERS, this.dialect.getTypeFormatters());
-                request.setAttribute(ExportPerformer.EXPORT_LIST, list);
+                request.setAttribute(ExportPerformer.EXPORT_TYPE_FORMATTER_REGISTRY, this.dialect.getTypeFormatterRegistry());
+                // CSV is written while rows are read, other formats need the whole list
+                Object rows = ExportPerformer.CSV_FORMAT.equals(this.format) ? findOriginalRows() : findOriginalList();
+                request.setAttribute(ExportPerformer.EXPORT_LIST, rows);
                 request.setAttribute(ExportPerformer.EXPORT_LIST_FORMAT, this.format);
+                if (dialect.isExportGzip()) {
+                    request.setAttribute(ExportPerformer.EXPORT_GZIP, Boolean.TRUE);
+                }
                 List<String> fields = new ArrayList<String>();
                 List<String> headers = new ArrayList<String>();
                 boolean someHeader = false;
@@ -81,7 +86,7 @@ public class ExportCommand {
                         } else {
                             key = keyExpression;
                         }
-                        String header = MessageResolutionUtils.resolveMessageForTemplate(arguments, key, null, false);
+                        String header = dialect.getMessageCache().findTemplateMessage(arguments, key);
                         if (header == null) {
                             header = key;
                         }
@@ -105,6 +110,10 @@ public class ExportCommand {
                         request.setAttribute(ExportPerformer.EXPORT_TITLE, text.getContent());
                     }
                 }
+                if (dialect.isExportFastPath()) {
+                    // Rows are not needed to serve the export file
+                    element.getParent().removeChild(element);
+                }
             } else {
                 // Add export link
                 Element container = PagesDialectUtil.getContainerElement(element);
@@ -115,17 +124,43 @@ public class ExportCommand {
         element.removeAttribute(attributeName);
     }
 
+    /**
+     * Return true if there is nothing to export. The iteration object is not copied nor consumed, so it can still be
+     * paginated.
+     */
+    private boolean isIterationEmpty() {
+        RecoverablePagedListHolder pagedListHolder = IterationListPreparer.findIterationList(element);
+        if (pagedListHolder != null) {
+            return pagedListHolder.isEmpty();
+        } else {
+            return IterationListPreparer.isEmpty(new IterationListFinder(arguments, element).getIterationObject());
+        }
+    }
+
     /**
      * Return export list. It can be the original iteration object or the sorted object set by SortAttrProcessor.
      */
-    private Collection findOriginalList(HttpServletRequest request) {
+    /**
+     * Finds the original rows to be read once, without copying paged sources to a List.
+     */
+    private Iterable findOriginalRows() {
+        RecoverablePagedListHolder recoverablePagedListHolder = IterationListPreparer.findIterationList(element);
+        if (recoverablePagedListHolder != null) {
+            return recoverablePagedListHolder.getOriginalRows();
+        } else {
+            IterationListFinder iterationListFinder = new IterationListFinder(arguments, element);
+            return IterationListPreparer.toIterable(iterationListFinder.getIterationObject());
+        }
+    }
+
+    private Collection findOriginalList() {
         Collection list;
-        if (request.getAttribute(IterationListPreparer.PAGED_LIST_HOLDER_ATTR) != null) {
-            RecoverablePagedListHolder recoverablePagedListHolder = (RecoverablePagedListHolder) request.getAttribute(IterationListPreparer.PAGED_LIST_HOLDER_ATTR);
+        RecoverablePagedListHolder recoverablePagedListHolder = IterationListPreparer.findIterationList(element);
+        if (recoverablePagedListHolder != null) {
             list = recoverablePagedListHolder.getOriginalList();
         } else {
             IterationListFinder iterationListFinder = new IterationListFinder(arguments, element);
-            list = (Collection) iterationListFinder.getIterationObject();
+            list = IterationListPreparer.convertToList(iterationListFinder.getIterationObject());
         }
         return list;
     }
@@ -136,16 +171,14 @@ public class ExportCommand {
     private void addExportLink(Element container) {
         // Build URL
         HttpServletRequest request = ((IWebContext) arguments.getContext()).getHttpServletRequest();
-        String uri = request.getRequestURL().toString().split("\\?")[0];
-        String query = request.getQueryString();
-        String href = uri + "?" + (query != null ? query + "&": "") + exportParam + "=" + this.format;
+        String href = RequestUrlBuilder.forRequest(request).getUrl(exportParam, this.format);
         // Build link element
         Element anchor = new Element("a");
         anchor.setAttribute("class", exportLinkClass);
         anchor.setAttribute("href", href);
         String text;
         if (dialect.getProperties().containsKey(i18Export)) {
-            text = PagesDialectUtil.templateMessage(arguments, dialect.getProperties().get(i18Export));
+            text = dialect.getMessageCache().getMessage(arguments, dialect.getProperties().get(i18Export), null);
         } else {
             text = this.format;
         }
@@ -166,10 +199,9 @@ public class ExportCommand {
 
     /** Get export parameter name from ExportFilter configuration. */
     private void readExportParam(HttpServletRequest request) {
-        for (FilterRegistration filterRegistration : request.getServletContext().getFilterRegistrations().values()) {
-            if (filterRegistration.getClassName().equals(ExportFilter.class.getName())) {
-                exportParam = filterRegistration.getInitParameter(ExportFilter.EXPORT_INIT_PARAMETER);
-            }
+        String filterExportParam = PagesDialectUtil.getExportParameter(request);
+        if (filterExportParam != null) {
+            exportParam = filterExportParam;
         }
     }
 }
@@ -0,0 +1,69 @@
+package net.sourceforge.pagesdialect.commands;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import net.sourceforge.pagesdialect.PagesDialect;
+import net.sourceforge.pagesdialect.util.PagesDialectUtil;
+import org.thymeleaf.Arguments;
+import org.thymeleaf.context.IWebContext;
+import org.thymeleaf.dom.Element;
+import org.thymeleaf.dom.NestableNode;
+import org.thymeleaf.dom.Node;
+
+/**
+ * Prunes the document of an export request down to the element being exported, so only its iteration
+ * expression, field specs and sort headers are processed.
+ */
+public class ExportFastPathCommand {
+
+    private Arguments arguments;
+    private Element root;
+    private PagesDialect dialect;
+
+    public ExportFastPathCommand(Arguments arguments, Element root, PagesDialect dialect) {
+        this.arguments = arguments;
+        this.root = root;
+        this.dialect = dialect;
+    }
+
+    public void execute() {
+        HttpServletRequest request = ((IWebContext) arguments.getContext()).getHttpServletRequest();
+        if (!PagesDialectUtil.isExportRequest(request)) {
+            return;
+        }
+        String format = request.getParameter(PagesDialectUtil.getExportParameter(request));
+        List<Element> exportElements = new ArrayList<Element>();
+        findExportElements(root, dialect.getPrefix() + ":" + format, exportElements);
+        if (exportElements.size() != 1) {
+            return; // Process whole template, so the last exported table is served, as without fast path
+        }
+        Element exportElement = exportElements.get(0);
+        // Keep the container element and its ancestors only. Ancestor attributes, as in th:with, are still processed.
+        Node kept = PagesDialectUtil.getContainerElement(exportElement);
+        while (kept != root) {
+            NestableNode parent = kept.getParent();
+            for (Node sibling : new ArrayList<Node>(parent.getChildren())) {
+                if (sibling != kept) {
+                    parent.removeChild(sibling);
+                }
+            }
+            kept = parent;
+        }
+    }
+
+    /**
+     * Adds the elements with the export attribute to provided list, stopping once there are two of them.
+     */
+    private void findExportElements(Element parent, String attributeName, List<Element> found) {
+        for (Element child : parent.getElementChildren()) {
+            if (found.size() > 1) {
+                return;
+            }
+            if (child.hasAttribute(attributeName)) {
+                found.add(child);
+            }
+            findExportElements(child, attributeName, found);
+        }
+    }
+}
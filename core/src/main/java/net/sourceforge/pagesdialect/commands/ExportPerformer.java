@@ -1,25 +1,28 @@
 package net.sourceforge.pagesdialect.commands;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import net.sf.dynamicreports.report.builder.DynamicReports;
 import net.sf.dynamicreports.report.builder.column.ColumnBuilder;
 import net.sf.dynamicreports.report.definition.datatype.DRIDataType;
 import net.sf.dynamicreports.report.exception.DRException;
+import net.sourceforge.pagesdialect.util.CsvExportHelper;
 import net.sourceforge.pagesdialect.util.DRIDataTypeAdapter;
 import net.sourceforge.pagesdialect.util.DynamicReportsHelper;
 import net.sourceforge.pagesdialect.util.PagesDialectUtil;
 import net.sourceforge.pagesdialect.util.TypeFormatter;
+import net.sourceforge.pagesdialect.util.TypeFormatterRegistry;
 
 /**
- * Performs the export to PDF and Excel files.
+ * Performs the export to PDF, Excel and CSV files.
  */
 public class ExportPerformer {
     
     public static final String PDF_FORMAT = "pdf";
     public static final String EXCEL_FORMAT = "excel";
+    public static final String CSV_FORMAT = "csv";
     
     public static final String EXPORT_LIST = "org.thymeleaf.pagesdialect.exportListAttr"; // Cannot be overriden at the moment
     public static final String EXPORT_LIST_FORMAT = "org.thymeleaf.pagesdialect.exportListFormat"; // Cannot be overriden at the moment
@@ -27,6 +30,8 @@ public class ExportPerformer {
     public static final String EXPORT_HEADERS = "org.thymeleaf.pagesdialect.exportHeaders"; // Cannot be overriden at the moment
     public static final String EXPORT_TITLE = "org.thymeleaf.pagesdialect.exportTitle"; // Cannot be overriden at the moment
     public static final String EXPORT_TYPE_FORMATTERS = "org.thymeleaf.pagesdialect.exportTypeFormatters"; // Cannot be overriden at the moment
+    public static final String EXPORT_TYPE_FORMATTER_REGISTRY = "org.thymeleaf.pagesdialect.exportTypeFormatterRegistry"; // Cannot be overriden at the moment
+    public static final String EXPORT_GZIP = "org.thymeleaf.pagesdialect.exportGzip"; // Cannot be overriden at the moment
     
     private HttpServletRequest request;
     private HttpServletResponse response;
@@ -43,13 +48,18 @@ public class ExportPerformer {
     }
 
     public void performExport() {
-        Set<TypeFormatter> typeFormatters = (Set<TypeFormatter>) request.getAttribute(EXPORT_TYPE_FORMATTERS);
+        TypeFormatterRegistry typeFormatters = (TypeFormatterRegistry) request.getAttribute(EXPORT_TYPE_FORMATTER_REGISTRY);
         String format = (String) request.getAttribute(EXPORT_LIST_FORMAT);
         List<String> fields = (List<String>) request.getAttribute(EXPORT_FIELDS);
         List<String> headers = (List<String>) request.getAttribute(EXPORT_HEADERS);
-        List list = (List) request.getAttribute(EXPORT_LIST);
+        Object rows = request.getAttribute(EXPORT_LIST);
         String title = (String) request.getAttribute(EXPORT_TITLE);
         String filename = title != null ? PagesDialectUtil.simplifyString(title) : "export";
+        if (CSV_FORMAT.equals(format)) {
+            performCsvExport(typeFormatters, fields, headers, (Iterable) rows, filename);
+            return;
+        }
+        List list = (List) rows;
         DynamicReportsHelper report = new DynamicReportsHelper(format, title, filename, response);
         ColumnBuilder[] columns = new ColumnBuilder[fields.size()];
         if (list == null || list.isEmpty()) {
@@ -68,18 +78,39 @@ public class ExportPerformer {
         report.export(list, columns);
     }
 
+    /**
+     * Write the rows as CSV while they are read, formatting each field with its TypeFormatter if found.
+     */
+    private void performCsvExport(TypeFormatterRegistry typeFormatters, List<String> fields, List<String> headers, Iterable rows, String filename) {
+        if (rows == null) {
+            throw new IllegalArgumentException("Export list is empty");
+        }
+        List<String> fieldPaths = new ArrayList<String>();
+        for (String field : fields) {
+            fieldPaths.add(field.trim());
+        }
+        boolean gzip = false;
+        if (request.getAttribute(EXPORT_GZIP) != null) {
+            response.addHeader("Vary", "Accept-Encoding"); // Caches must not serve gzip to other clients
+            gzip = acceptsGzip();
+        }
+        new CsvExportHelper(filename, response, gzip).export(rows, fieldPaths, headers, typeFormatters, request);
+    }
+
+    private boolean acceptsGzip() {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        return acceptEncoding != null && acceptEncoding.contains("gzip");
+    }
+
     /**
      * Get the DRIDataType of a field, getting it from TypeFormatter set if found.
      */
-    private DRIDataType detectType(Object object, String fieldPath, Set<TypeFormatter> typeFormatters, HttpServletRequest request) {
+    private DRIDataType detectType(Object object, String fieldPath, TypeFormatterRegistry typeFormatters, HttpServletRequest request) {
         Class objectClass = PagesDialectUtil.getPropertyClass(object.getClass(), fieldPath);
         // search type in TypeFormatter set
-        if (objectClass != null && typeFormatters != null) {
-            for (TypeFormatter typeFormatter : typeFormatters) {
-                if (typeFormatter.getValueClass().isAssignableFrom(objectClass)) {
-                    return new DRIDataTypeAdapter(typeFormatter, request);
-                }
-            }
+        TypeFormatter typeFormatter = typeFormatters != null ? typeFormatters.getTypeFormatter(objectClass) : null;
+        if (typeFormatter != null) {
+            return new DRIDataTypeAdapter(typeFormatter, request);
         }
         // If not found, try automatic detection
         try {
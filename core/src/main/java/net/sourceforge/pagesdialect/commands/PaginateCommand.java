@@ -1,9 +1,13 @@
 package net.sourceforge.pagesdialect.commands;
 
+import net.sourceforge.pagesdialect.util.IterationListFinder;
 import net.sourceforge.pagesdialect.util.IterationListPreparer;
+import net.sourceforge.pagesdialect.util.KeysetPage;
+import net.sourceforge.pagesdialect.util.KeysetSource;
 import net.sourceforge.pagesdialect.util.NavigationBarRenderer;
 import net.sourceforge.pagesdialect.PagesDialect;
 import net.sourceforge.pagesdialect.util.PagesDialectUtil;
+import javax.servlet.http.HttpServletRequest;
 import org.springframework.beans.support.PagedListHolder;
 import org.thymeleaf.Arguments;
 import org.thymeleaf.context.IWebContext;
@@ -18,6 +22,7 @@ public class PaginateCommand {
 
     private int pageSize;
     private PagedListHolder pagedList;
+    private KeysetPage keysetPage;
 
     public PaginateCommand(Arguments arguments, Element element, String attributeName, PagesDialect dialect) {
         this.arguments = arguments;
@@ -37,22 +42,54 @@ public class PaginateCommand {
     private void parseArguments() {
         String attributeValue = element.getAttributeValue(attributeName);
         String processedValue = PagesDialectUtil.expressionValue(arguments, attributeValue).toString();
-        pageSize = Integer.parseInt(processedValue);
+        HttpServletRequest request = ((IWebContext) arguments.getContext()).getHttpServletRequest();
+        pageSize = PagesDialectUtil.getPageSize(dialect, request, Integer.parseInt(processedValue));
     }
 
     private void setCurrentPage() {
+        IWebContext context = (IWebContext) arguments.getContext();
+        if (IterationListPreparer.findIterationList(element) == null) {
+            IterationListFinder iterationListFinder = new IterationListFinder(arguments, element);
+            if (iterationListFinder.getIterationObject() instanceof KeysetSource) {
+                setKeysetPage(iterationListFinder);
+                return;
+            }
+        }
         IterationListPreparer iterationListPreparer = new IterationListPreparer(arguments, element);
         pagedList = iterationListPreparer.findOrCreateIterationList();
         pagedList.setPageSize(pageSize);
-        IWebContext context = (IWebContext) arguments.getContext();
         String pageParam = dialect.getPageParameter();
         if (context.getRequestParameters().containsKey(pageParam)) {
             pagedList.setPage(Integer.parseInt(context.getRequestParameters().get(pageParam)[0]));
         }
     }
 
+    /**
+     * Fetches the rows after or before the requested key and replaces the iteration object with them.
+     */
+    private void setKeysetPage(IterationListFinder iterationListFinder) {
+        IWebContext context = (IWebContext) arguments.getContext();
+        String after = getParameter(context, dialect.getAfterParameter());
+        String before = getParameter(context, dialect.getBeforeParameter());
+        KeysetSource source = (KeysetSource) iterationListFinder.getIterationObject();
+        keysetPage = KeysetPage.fetch(source, after, before, pageSize);
+        context.getRequestAttributes().put(KeysetPage.KEYSET_PAGE_ATTR, keysetPage);
+        element.setAttribute(iterationListFinder.getIterationExpression(), iterationListFinder.getItemName()
+                + " : ${#ctx.requestAttributes." + KeysetPage.KEYSET_PAGE_ATTR + ".pageList}");
+    }
+
+    private String getParameter(IWebContext context, String param) {
+        String[] values = context.getRequestParameters().get(param);
+        return values != null && values.length > 0 && values[0].length() > 0 ? values[0] : null;
+    }
+
     private void addNavigationBar() {
-        NavigationBarRenderer renderer = new NavigationBarRenderer(arguments, element, dialect, pagedList);
+        NavigationBarRenderer renderer;
+        if (keysetPage != null) {
+            renderer = new NavigationBarRenderer(arguments, element, dialect, keysetPage);
+        } else {
+            renderer = new NavigationBarRenderer(arguments, element, dialect, pagedList);
+        }
         renderer.addNavigationBar();
     }
 }
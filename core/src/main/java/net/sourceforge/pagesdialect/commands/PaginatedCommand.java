@@ -1,11 +1,14 @@
 package net.sourceforge.pagesdialect.commands;
 
 import net.sourceforge.pagesdialect.util.IterationListFinder;
+import net.sourceforge.pagesdialect.util.KeysetPage;
 import net.sourceforge.pagesdialect.util.NavigationBarRenderer;
 import net.sourceforge.pagesdialect.PagesDialect;
 import net.sourceforge.pagesdialect.util.PagesDialectUtil;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.thymeleaf.Arguments;
+import org.thymeleaf.context.IWebContext;
 import org.thymeleaf.dom.Element;
 
 public class PaginatedCommand {
@@ -17,7 +20,7 @@ public class PaginatedCommand {
 
     private boolean executeProcessor;
     
-    private Page pagedList;
+    private Object pagedList;
 
     public PaginatedCommand(Arguments arguments, Element element, String attributeName, PagesDialect dialect) {
         this.arguments = arguments;
@@ -44,11 +47,25 @@ public class PaginatedCommand {
 
     private void findIterationObject() {
         IterationListFinder iterationListFinder = new IterationListFinder(arguments, element);
-        pagedList = (Page) iterationListFinder.getIterationObject();
+        pagedList = iterationListFinder.getIterationObject();
+        if (pagedList instanceof KeysetPage) {
+            // Iterate page rows
+            IWebContext context = (IWebContext) arguments.getContext();
+            context.getRequestAttributes().put(KeysetPage.KEYSET_PAGE_ATTR, pagedList);
+            element.setAttribute(iterationListFinder.getIterationExpression(), iterationListFinder.getItemName()
+                    + " : ${#ctx.requestAttributes." + KeysetPage.KEYSET_PAGE_ATTR + ".pageList}");
+        }
     }
 
     private void addNavigationBar() {
-        NavigationBarRenderer renderer = new NavigationBarRenderer(arguments, element, dialect, pagedList);
+        NavigationBarRenderer renderer;
+        if (pagedList instanceof KeysetPage) {
+            renderer = new NavigationBarRenderer(arguments, element, dialect, (KeysetPage) pagedList);
+        } else if (pagedList instanceof Page) {
+            renderer = new NavigationBarRenderer(arguments, element, dialect, (Page) pagedList);
+        } else {
+            renderer = new NavigationBarRenderer(arguments, element, dialect, (Slice) pagedList);
+        }
         renderer.addNavigationBar();
     }
 }
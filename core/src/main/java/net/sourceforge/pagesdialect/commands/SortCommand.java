@@ -1,17 +1,22 @@
 package net.sourceforge.pagesdialect.commands;
 
-import java.text.Collator;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import javax.servlet.http.HttpServletRequest;
-import net.sf.dynamicreports.report.definition.expression.DRIValueFormatter;
+import net.sourceforge.pagesdialect.util.IndexedDataset;
 import net.sourceforge.pagesdialect.util.IterationListPreparer;
+import net.sourceforge.pagesdialect.util.PageSourcePagedListHolder;
+import net.sourceforge.pagesdialect.util.ListSorter;
 import net.sourceforge.pagesdialect.PagesDialect;
 import net.sourceforge.pagesdialect.util.PagesDialectUtil;
-import net.sourceforge.pagesdialect.util.TypeFormatter;
+import net.sourceforge.pagesdialect.util.PermutationList;
+import net.sourceforge.pagesdialect.util.RecoverablePagedListHolder;
+import net.sourceforge.pagesdialect.util.SortCache;
+import net.sourceforge.pagesdialect.util.SortField;
+import net.sourceforge.pagesdialect.util.SortKeyExtractor;
 import org.thymeleaf.Arguments;
-import org.thymeleaf.context.IWebContext;
 import org.thymeleaf.dom.Element;
 import org.thymeleaf.exceptions.TemplateProcessingException;
 import org.thymeleaf.standard.processor.attr.StandardEachAttrProcessor;
@@ -21,6 +26,9 @@ import org.thymeleaf.standard.processor.attr.StandardEachAttrProcessor;
  */
 public class SortCommand extends SortLinkCommand {
 
+    // Node property of the th:each element once its list is sorted
+    public static final String SORTED_NODE_PROPERTY = "net_sourceforge_pagesdialect_PagesDialect_sorted";
+
     public SortCommand(Arguments arguments, Element element, String attributeName, PagesDialect dialect) {
         super(arguments, element, attributeName, dialect);
     }
@@ -30,24 +38,86 @@ public class SortCommand extends SortLinkCommand {
         // Parse parameters
         String sortField = element.getAttributeValue(attributeName).trim();
         Boolean desc = getSortType(sortField);
-        // Sort original list, if requested
-        if (desc != null) {
-            List iterable = getIterableList();
-            Collections.sort(iterable, getFieldComparator(sortField, desc));
+        // Sort original list, if requested. The first sort header found in each table performs the sort for it.
+        List<SortField> sortFields = getSortFields();
+        Element elementContainingIteration = sortFields.isEmpty() ? null : getElementContainingIteration();
+        if (elementContainingIteration != null && elementContainingIteration.getNodeProperty(SORTED_NODE_PROPERTY) == null) {
+            sortFields = retainSortableFields(sortFields);
+            if (!sortFields.isEmpty()) {
+                elementContainingIteration.setNodeProperty(SORTED_NODE_PROPERTY, Boolean.TRUE);
+                RecoverablePagedListHolder pagedListHolder = getPagedListHolder(elementContainingIteration);
+                if (pagedListHolder instanceof PageSourcePagedListHolder
+                        && ((PageSourcePagedListHolder) pagedListHolder).isSortable()) {
+                    // Let the source sort rows
+                    ((PageSourcePagedListHolder) pagedListHolder).setSortFields(sortFields);
+                } else {
+                    sortOriginalList(elementContainingIteration, pagedListHolder, sortFields);
+                }
+            }
         }
         // Add sort link
         addSortLink(sortField, desc);
         // Housekeeping
         element.removeAttribute(attributeName);
     }
-    
+
+    /**
+     * Replaces the original list with a sorted view of it.
+     */
+    private void sortOriginalList(Element elementContainingIteration, RecoverablePagedListHolder pagedListHolder,
+            List<SortField> sortFields) {
+        List iterable = pagedListHolder.getOriginalList();
+        int rowsToSort = getRowsToSort(elementContainingIteration, iterable.size());
+        // Look up a previous sort of the same list
+        SortCache sortCache = dialect.getSortCache();
+        Object cacheKey = null;
+        int[] order = null;
+        if (sortCache != null) {
+            Object version = context.getVariables().get(dialect.getSortVersionVariable());
+            String iterationName = elementContainingIteration.getAttributeValue(getIterationAttrName());
+            cacheKey = SortCache.createKey(iterable, version, iterationName, sortFields, context.getLocale());
+            order = sortCache.get(cacheKey, rowsToSort, iterable.size());
+        }
+        if (order == null) {
+            order = sortList(iterable, sortFields, rowsToSort);
+            if (sortCache != null) {
+                sortCache.put(cacheKey, order, rowsToSort);
+            }
+        }
+        pagedListHolder.setOriginalList(new PermutationList(iterable, order));
+    }
+
+    /**
+     * Removes from the sort specification the fields without a sort header in the table.
+     */
+    private List<SortField> retainSortableFields(List<SortField> sortFields) {
+        Set<String> sortableFields = new HashSet<String>();
+        collectSortableFields(PagesDialectUtil.getContainerElement(element), sortableFields);
+        List<SortField> retained = new ArrayList<SortField>();
+        for (SortField sortField : sortFields) {
+            if (sortableFields.contains(sortField.getField())) {
+                retained.add(sortField);
+            }
+        }
+        return retained;
+    }
+
+    private void collectSortableFields(Element parent, Set<String> sortableFields) {
+        if (parent.hasAttribute(attributeName)) {
+            sortableFields.add(parent.getAttributeValue(attributeName).trim());
+        }
+        for (Element child : parent.getElementChildren()) {
+            collectSortableFields(child, sortableFields);
+        }
+    }
+
     /**
-     * Returns the list iteration for the th:each
+     * Returns the element with the th:each attribute
      */
-    private List getIterableList() {
+    private Element getElementContainingIteration() {
         Element elementContainingIteration = null;
         Element table = PagesDialectUtil.getContainerElement(element);
-        String iterationAttrName = PagesDialectUtil.getStandardDialectPrefix(arguments) + ":" + StandardEachAttrProcessor.ATTR_NAME; // th:each
+        String iterationAttrName = getIterationAttrName();
         search : for (Element child : table.getElementChildren()) {
             if (child.hasAttribute(iterationAttrName)) {
                 elementContainingIteration = child;
@@ -63,66 +133,70 @@ public class SortCommand extends SortLinkCommand {
         if (elementContainingIteration == null) {
             throw new TemplateProcessingException("Iteration object not found");
         }
-        IterationListPreparer iterationListPreparer = new IterationListPreparer(arguments, elementContainingIteration);
-        return iterationListPreparer.findOrCreateIterationList().getOriginalList();
+        return elementContainingIteration;
+    }
+
+    /** Returns "th:each". */
+    private String getIterationAttrName() {
+        return PagesDialectUtil.getStandardDialectPrefix(arguments) + ":" + StandardEachAttrProcessor.ATTR_NAME;
     }
 
     /**
-     * Builds a comparator for provided field.
-     * @param field property which will be used by comparator.
+     * Returns the paged list holder which replaces the list iteration for the th:each
      */
-    private Comparator getFieldComparator(final String field, final Boolean desc) {
-        return new Comparator() {
-            @Override
-            public int compare(Object objA, Object objB) {
-                Object propertyA = PagesDialectUtil.getProperty(objA, field);
-                Object propertyB = PagesDialectUtil.getProperty(objB, field);
-                int sign = desc != null && desc ? -1 : 1;
-                if (propertyA == null && propertyB == null) {
-                    return 0; // null == null required by Comparator contract
-                } if (propertyA == null) {
-                    return sign * -1; // nulls at beggining
-                } else if (propertyB == null) {
-                    return sign * 1; // nulls at beggining
-                } if (propertyA instanceof Comparable && propertyB instanceof Comparable) {
-                    return sign * ((Comparable) propertyA).compareTo(propertyB);
-                } else if (thereIsTypeFormatterForObject(propertyA)) {
-                    // Try to sort after formatting
-                    TypeFormatter typeFormatter = getTypeFormatterForObject(propertyA);
-                    HttpServletRequest request = ((IWebContext) context).getHttpServletRequest();
-                    DRIValueFormatter valueFormatter = typeFormatter.getDRIValueFormatter(request);
-                    String valueA = valueFormatter.format(propertyA, null).toString();
-                    String valueB = valueFormatter.format(propertyB, null).toString();
-                    Collator collator = Collator.getInstance(context.getLocale());
-                    return sign * collator.compare(valueA, valueB);
-                } else {
-                    throw new TemplateProcessingException("Field does not implement Comparable");
-                }
-            }
-        };
+    private RecoverablePagedListHolder getPagedListHolder(Element elementContainingIteration) {
+        IterationListPreparer iterationListPreparer = new IterationListPreparer(arguments, elementContainingIteration);
+        return iterationListPreparer.findOrCreateIterationList();
     }
 
-    private boolean thereIsTypeFormatterForObject(Object object) {
-        if (this.dialect.getTypeFormatters() != null) {
-            for (TypeFormatter typeFormatter : this.dialect.getTypeFormatters()) {
-                Class typeFormatterClass = typeFormatter.getValueClass();
-                if (typeFormatterClass.isInstance(object)) {
-                    return true;
-                }
+    /**
+     * Returns how many leading rows must be in order. If the iteration is also paginated, only the rows up to the
+     * end of the requested page are rendered. Every row is needed when exporting or for deep pages, where a full
+     * sort is cheaper.
+     */
+    private int getRowsToSort(Element elementContainingIteration, int size) {
+        String paginateAttrName = attributeName.substring(0, attributeName.indexOf(':') + 1) + PagesDialect.PAGINATE_ATTR_NAME;
+        if (!elementContainingIteration.hasAttribute(paginateAttrName)
+                || PagesDialectUtil.isExportRequest(context.getHttpServletRequest())) {
+            return size;
+        }
+        try {
+            String paginateValue = elementContainingIteration.getAttributeValue(paginateAttrName);
+            int pageSize = Integer.parseInt(PagesDialectUtil.expressionValue(arguments, paginateValue).toString());
+            pageSize = PagesDialectUtil.getPageSize(dialect, context.getHttpServletRequest(), pageSize);
+            int page = 0;
+            if (context.getRequestParameters().containsKey(dialect.getPageParameter())) {
+                page = Math.max(0, Integer.parseInt(context.getRequestParameters().get(dialect.getPageParameter())[0]));
             }
+            long rowsToShow = (long) (page + 1) * pageSize;
+            return pageSize > 0 && rowsToShow * 2 < size ? (int) rowsToShow : size;
+        } catch (NumberFormatException ex) {
+            return size;
         }
-        return false;
     }
 
-    private TypeFormatter getTypeFormatterForObject(Object object) {
-        if (this.dialect.getTypeFormatters() != null) {
-            for (TypeFormatter typeFormatter : this.dialect.getTypeFormatters()) {
-                Class typeFormatterClass = typeFormatter.getValueClass();
-                if (typeFormatterClass.isInstance(object)) {
-                    return typeFormatter;
-                }
+    /**
+     * Sorts the list, or looks up its order if the list belongs to an indexed dataset.
+     * @param rowsToSort only this number of leading rows is guaranteed to be sorted.
+     * @return sorted row positions.
+     */
+    private int[] sortList(List list, List<SortField> sortFields, int rowsToSort) {
+        IndexedDataset dataset = sortFields.size() == 1 ? dialect.findDataset(list) : null;
+        if (dataset != null && dataset.isIndexed(sortFields.get(0).getField())) {
+            SortField sortField = sortFields.get(0);
+            int[] index = dataset.getIndex(sortField.getField(), sortField.isDesc(), context.getLocale());
+            if (index == null) {
+                index = createListSorter().sort(list, sortFields, list.size());
+                dataset.putIndex(sortField.getField(), sortField.isDesc(), context.getLocale(), index);
             }
+            return index;
         }
-        throw new IllegalStateException("TypeFormatter not found for class " + object.getClass().getName());
+        return createListSorter().sort(list, sortFields, rowsToSort);
+    }
+
+    private ListSorter createListSorter() {
+        HttpServletRequest request = context.getHttpServletRequest();
+        SortKeyExtractor extractor = new SortKeyExtractor(context.getLocale(), dialect.getTypeFormatterRegistry(), request);
+        return new ListSorter(extractor, dialect.getSortExecutor(), dialect.getParallelSortThreshold());
     }
 }
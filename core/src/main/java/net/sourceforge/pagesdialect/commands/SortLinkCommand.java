@@ -1,12 +1,18 @@
 package net.sourceforge.pagesdialect.commands;
 
-import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import net.sourceforge.pagesdialect.PagesDialect;
+import net.sourceforge.pagesdialect.util.PageableArgumentResolver;
+import net.sourceforge.pagesdialect.util.RequestUrlBuilder;
+import net.sourceforge.pagesdialect.util.SortField;
 import org.thymeleaf.Arguments;
 import org.thymeleaf.context.IWebContext;
 import org.thymeleaf.dom.Element;
 import org.thymeleaf.dom.Node;
+import org.thymeleaf.dom.Text;
 
 /**
  * Adds a sort link.
@@ -19,19 +25,19 @@ public class SortLinkCommand {
     protected PagesDialect dialect;
     protected IWebContext context;
 
-    private String sortParam = "sort"; // Default value. Can be overriden by config.
-    private String sortTypeParam = "sortType"; // Default value. Can be overriden by config.
+    private String sortParam;
+    private String sortTypeParam;
+    private boolean multiSort = false; // Default value. Can be overriden by config.
 
     public SortLinkCommand(Arguments arguments, Element element, String attributeName, PagesDialect dialect) {
         this.arguments = arguments;
         this.element = element;
         this.attributeName = attributeName;
         this.dialect = dialect;
-        if (dialect.getProperties().containsKey(PagesDialect.SORT_PARAMETER)) {
-            sortParam = dialect.getProperties().get(PagesDialect.SORT_PARAMETER);
-        }
-        if (dialect.getProperties().containsKey(PagesDialect.SORT_TYPE_PARAMETER)) {
-            sortTypeParam = dialect.getProperties().get(PagesDialect.SORT_TYPE_PARAMETER);
+        this.sortParam = dialect.getSortParameter();
+        this.sortTypeParam = dialect.getSortTypeParameter();
+        if (dialect.getProperties().containsKey(PagesDialect.MULTI_SORT)) {
+            multiSort = "true".equals(dialect.getProperties().get(PagesDialect.MULTI_SORT));
         }
         this.context = (IWebContext) arguments.getContext();
     }
@@ -46,45 +52,49 @@ public class SortLinkCommand {
         element.removeAttribute(attributeName);
     }
 
-    protected Boolean getSortType(String sortField) {
-        if (context.getRequestParameters().containsKey(this.sortParam)) {
+    /**
+     * Returns the requested sort specification, as in, sort=category.name,price&sortType=asc,desc. If the sort has
+     * been resolved by PageableArgumentResolver, only the fields it accepted are returned.
+     * @return empty list if there is no sort request.
+     */
+    protected List<SortField> getSortFields() {
+        if (context.getRequestAttributes().containsKey(PageableArgumentResolver.SORT_FIELDS_ATTR)) {
+            return (List<SortField>) context.getRequestAttributes().get(PageableArgumentResolver.SORT_FIELDS_ATTR);
+        }
+        if (context.getRequestParameters().containsKey(this.sortParam)
+                && context.getRequestParameters().containsKey(this.sortTypeParam)) {
             String sortValue = context.getRequestParameters().get(this.sortParam)[0];
-            if (sortValue != null && sortField.equals(sortValue)) {
-                if (context.getRequestParameters().containsKey(this.sortTypeParam)) {
-                    return "desc".equals(context.getRequestParameters().get(this.sortTypeParam)[0]);
-                }
-            }
+            String sortTypeValue = context.getRequestParameters().get(this.sortTypeParam)[0];
+            return SortField.parse(sortValue, sortTypeValue);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns true if the field is sorted descending, false if sorted ascending, null if not sorted.
+     */
+    protected Boolean getSortType(String sortField) {
+        List<SortField> sortFields = getSortFields();
+        int index = SortField.indexOf(sortFields, sortField);
+        if (index >= 0) {
+            return sortFields.get(index).isDesc();
         }
         return null;
     }
-    
 
     /**
-     * Add a sort link to provided element.
+     * Add a sort link to provided element. If multiple sort is enabled, also add a link to add or remove the field
+     * from current sort specification.
      */
     protected void addSortLink(String field, Boolean desc) {
-        // Build URL
-        HttpServletRequest request = ((IWebContext) arguments.getContext()).getHttpServletRequest();
-        String uri = request.getRequestURL().toString().split("\\?")[0];
-        String query = request.getQueryString();
-        // Remove previous parameters
-        if (query != null) {
-            query = query.replaceAll("&?" + sortParam + "=[^&]*", "");
-            query = query.replaceAll("&?" + sortTypeParam + "=[^&]*", "");
-        }
-        if (query != null && !"".equals(query)) {
-            query += "&";
-        } else {
-            query = "";
-        }
-        query += sortParam + "=" + field + "&" + sortTypeParam + "=" + (desc == null || desc ? "asc" : "desc");
-        String href = uri + "?" + query;
+        // Sort by this field only, toggling direction
+        List<SortField> singleSort = Collections.singletonList(new SortField(field, !(desc == null || desc)));
         // Insert new anchor between element and its content
         Element anchor = element.cloneElementNodeWithNewName(element, "a", false);
         for (String attr : anchor.getAttributeMap().keySet()) {
             anchor.removeAttribute(attr);
         }
-        anchor.setAttribute("href", href);
+        anchor.setAttribute("href", getSortUrl(singleSort));
         if (desc == null) {
             anchor.setAttribute("class", "sort-sortable");
         } else if (desc) {
@@ -96,5 +106,44 @@ public class SortLinkCommand {
             element.removeChild(child);
         }
         element.addChild(anchor);
+        if (multiSort) {
+            addMultiSortLink(field, desc);
+        }
+    }
+
+    /**
+     * Adds a link which appends the field to the current sort specification, or removes it if already there.
+     */
+    private void addMultiSortLink(String field, Boolean desc) {
+        List<SortField> sortFields = new ArrayList<SortField>(getSortFields());
+        Element anchor = new Element("a");
+        if (desc == null) {
+            if (sortFields.isEmpty()) {
+                return;
+            }
+            sortFields.add(new SortField(field, false));
+            anchor.setAttribute("class", "sort-add");
+            anchor.addChild(new Text("+"));
+        } else {
+            if (sortFields.size() < 2) {
+                return;
+            }
+            sortFields.remove(SortField.indexOf(sortFields, field));
+            anchor.setAttribute("class", "sort-remove");
+            anchor.addChild(new Text("-"));
+        }
+        anchor.setAttribute("href", getSortUrl(sortFields));
+        element.addChild(new Text(" "));
+        element.addChild(anchor);
+    }
+
+    /**
+     * Returns current URL with the sort parameters replaced by provided sort specification.
+     */
+    protected String getSortUrl(List<SortField> sortFields) {
+        RequestUrlBuilder urlBuilder = RequestUrlBuilder.forRequest(context.getHttpServletRequest());
+        String[] params = {sortParam, sortTypeParam};
+        String[] values = {SortField.toSortValue(sortFields), SortField.toSortTypeValue(sortFields)};
+        return urlBuilder.getUrl(new String[0], params, values);
     }
 }
@@ -0,0 +1,35 @@
+package net.sourceforge.pagesdialect.processors;
+
+import net.sourceforge.pagesdialect.PagesDialect;
+import net.sourceforge.pagesdialect.commands.ExportFastPathCommand;
+import org.thymeleaf.Arguments;
+import org.thymeleaf.dom.Element;
+import org.thymeleaf.processor.ElementNameProcessorMatcher;
+import org.thymeleaf.processor.ProcessorResult;
+import org.thymeleaf.processor.element.AbstractElementProcessor;
+
+/**
+ * Thymeleaf processor that skips the processing of the whole page when serving an export file.
+ *
+ * Only registered if the exportFastPath property is true.
+ **/
+public class ExportFastPathProcessor extends AbstractElementProcessor {
+
+    private PagesDialect dialect;
+
+    public ExportFastPathProcessor(PagesDialect dialect) {
+        super(new ElementNameProcessorMatcher("html", false));
+        this.dialect = dialect;
+    }
+
+    @Override
+    public int getPrecedence() {
+        return PagesDialect.EXPORT_FAST_PATH_PRECEDENCE;
+    }
+
+    @Override
+    protected ProcessorResult processElement(Arguments arguments, Element element) {
+        new ExportFastPathCommand(arguments, element, dialect).execute();
+        return ProcessorResult.OK;
+    }
+}
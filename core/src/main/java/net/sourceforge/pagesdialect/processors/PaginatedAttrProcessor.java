@@ -9,7 +9,8 @@ import org.thymeleaf.processor.attr.AbstractAttrProcessor;
 
 /**
  * Thymeleaf processor which adds page navigation links (previous, next...) and number of results
- * to a th:each processor. The iteration object is expected to implement spring-data Page interface.
+ * to a th:each processor. The iteration object is expected to implement spring-data Page or Slice interfaces, or
+ * to be a KeysetPage. Slices render Previous / Next links without total count.
  * This processor do not paginate, it is intented to be used with server-side pagination.
  *
  * Example usage:
@@ -0,0 +1,192 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read-only List views over arrays. Primitive values are boxed when read, so only the rendered rows are boxed.
+ */
+public abstract class ArrayListView extends AbstractList implements RandomAccess {
+
+    /**
+     * Returns a read-only List view over an array of any component type.
+     */
+    public static List wrap(Object array) {
+        if (array instanceof Object[]) {
+            return Collections.unmodifiableList(Arrays.asList((Object[]) array));
+        } else if (array instanceof int[]) {
+            return new IntArrayView((int[]) array);
+        } else if (array instanceof long[]) {
+            return new LongArrayView((long[]) array);
+        } else if (array instanceof double[]) {
+            return new DoubleArrayView((double[]) array);
+        } else if (array instanceof float[]) {
+            return new FloatArrayView((float[]) array);
+        } else if (array instanceof short[]) {
+            return new ShortArrayView((short[]) array);
+        } else if (array instanceof byte[]) {
+            return new ByteArrayView((byte[]) array);
+        } else if (array instanceof char[]) {
+            return new CharArrayView((char[]) array);
+        } else if (array instanceof boolean[]) {
+            return new BooleanArrayView((boolean[]) array);
+        } else {
+            throw new IllegalArgumentException("Not an array: " + array);
+        }
+    }
+
+    private static class IntArrayView extends ArrayListView {
+
+        private final int[] array;
+
+        IntArrayView(int[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public Object get(int index) {
+            return Integer.valueOf(array[index]);
+        }
+
+        @Override
+        public int size() {
+            return array.length;
+        }
+    }
+
+    private static class LongArrayView extends ArrayListView {
+
+        private final long[] array;
+
+        LongArrayView(long[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public Object get(int index) {
+            return Long.valueOf(array[index]);
+        }
+
+        @Override
+        public int size() {
+            return array.length;
+        }
+    }
+
+    private static class DoubleArrayView extends ArrayListView {
+
+        private final double[] array;
+
+        DoubleArrayView(double[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public Object get(int index) {
+            return Double.valueOf(array[index]);
+        }
+
+        @Override
+        public int size() {
+            return array.length;
+        }
+    }
+
+    private static class FloatArrayView extends ArrayListView {
+
+        private final float[] array;
+
+        FloatArrayView(float[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public Object get(int index) {
+            return Float.valueOf(array[index]);
+        }
+
+        @Override
+        public int size() {
+            return array.length;
+        }
+    }
+
+    private static class ShortArrayView extends ArrayListView {
+
+        private final short[] array;
+
+        ShortArrayView(short[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public Object get(int index) {
+            return Short.valueOf(array[index]);
+        }
+
+        @Override
+        public int size() {
+            return array.length;
+        }
+    }
+
+    private static class ByteArrayView extends ArrayListView {
+
+        private final byte[] array;
+
+        ByteArrayView(byte[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public Object get(int index) {
+            return Byte.valueOf(array[index]);
+        }
+
+        @Override
+        public int size() {
+            return array.length;
+        }
+    }
+
+    private static class CharArrayView extends ArrayListView {
+
+        private final char[] array;
+
+        CharArrayView(char[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public Object get(int index) {
+            return Character.valueOf(array[index]);
+        }
+
+        @Override
+        public int size() {
+            return array.length;
+        }
+    }
+
+    private static class BooleanArrayView extends ArrayListView {
+
+        private final boolean[] array;
+
+        BooleanArrayView(boolean[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public Object get(int index) {
+            return Boolean.valueOf(array[index]);
+        }
+
+        @Override
+        public int size() {
+            return array.length;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Rows of a PageSource or KeysetSource read in chunks while iterating, so only one chunk is held in memory, as in,
+ * to stream an export.
+ */
+public abstract class ChunkedIterable implements Iterable {
+
+    // Rows read at once
+    static final int CHUNK_SIZE = 500;
+
+    /**
+     * Returns the rows of a PageSource read with successive offsets.
+     *
+     * @param sortFields order requested to a SortablePageSource, or an empty list.
+     */
+    public static Iterable forPageSource(final PageSource source, final List<SortField> sortFields) {
+        return new ChunkedIterable() {
+            @Override
+            protected List fetch(int offset, List previousChunk) {
+                if (!sortFields.isEmpty()) {
+                    return ((SortablePageSource) source).fetch(offset, CHUNK_SIZE, sortFields);
+                } else {
+                    return source.fetch(offset, CHUNK_SIZE);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the rows of a KeysetSource read after the key of the last row of the previous chunk.
+     */
+    public static Iterable forKeysetSource(final KeysetSource source) {
+        return new ChunkedIterable() {
+            @Override
+            protected List fetch(int offset, List previousChunk) {
+                String key = previousChunk == null ? null : source.getKey(previousChunk.get(previousChunk.size() - 1));
+                return source.fetchAfter(key, CHUNK_SIZE);
+            }
+        };
+    }
+
+    /**
+     * Returns up to CHUNK_SIZE rows following the previous chunk.
+     *
+     * @param offset number of rows already read.
+     * @param previousChunk last rows read, or null for the first chunk.
+     */
+    protected abstract List fetch(int offset, List previousChunk);
+
+    @Override
+    public Iterator iterator() {
+        return new Iterator() {
+
+            private List chunk;
+            private int index;
+            private int offset;
+
+            @Override
+            public boolean hasNext() {
+                if (chunk == null) {
+                    chunk = nullToEmpty(fetch(0, null));
+                } else if (index == chunk.size() && chunk.size() >= CHUNK_SIZE) {
+                    offset += chunk.size();
+                    chunk = nullToEmpty(fetch(offset, chunk));
+                    index = 0;
+                }
+                return index < chunk.size();
+            }
+
+            @Override
+            public Object next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return chunk.get(index++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static List nullToEmpty(List rows) {
+        return rows != null ? rows : Collections.EMPTY_LIST;
+    }
+}
@@ -0,0 +1,159 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import net.sf.dynamicreports.report.definition.expression.DRIValueFormatter;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+
+/**
+ * Writes rows as CSV straight to the response, one row at a time, so memory use does not depend on the number of
+ * rows.
+ */
+public class CsvExportHelper {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // Numbers are written as is, even if negative
+    private static final Pattern NUMBER = Pattern.compile("-?[0-9][0-9.,]*");
+
+    HttpServletResponse response;
+    String filename;
+    boolean gzip;
+
+    /**
+     * @param filename export filename.
+     * @param response Servlet response to write to.
+     * @param gzip true to compress the response.
+     */
+    public CsvExportHelper(String filename, HttpServletResponse response, boolean gzip) {
+        this.response = response;
+        this.filename = filename;
+        this.gzip = gzip;
+    }
+
+    /**
+     * Trigger the exportation.
+     * @param items beans to export.
+     * @param fields field paths to export.
+     * @param headers column headers, or null for no header row.
+     * @param typeFormatters TypeFormatters of field types, found from the first row read, or null to use toString.
+     * @param request current request, used by the TypeFormatters.
+     */
+    public void export(Iterable items, List<String> fields, List<String> headers, TypeFormatterRegistry typeFormatters,
+                       HttpServletRequest request) {
+        Iterator rows = items.iterator();
+        if (!rows.hasNext()) {
+            throw new IllegalArgumentException("Export list is empty");
+        }
+        String file = filename + "_" + PagesDialectUtil.now();
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + file + ".csv\"");
+        response.setContentType("text/csv; charset=UTF-8");
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+        }
+        try {
+            OutputStream out = gzip ? new GZIPOutputStream(response.getOutputStream(), BUFFER_SIZE) : response.getOutputStream();
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), BUFFER_SIZE);
+            writer.write('\uFEFF'); // Byte order mark, so spreadsheets detect UTF-8
+            if (headers != null) {
+                for (int i = 0; i < headers.size(); i++) {
+                    writeCell(writer, i, headers.get(i));
+                }
+                writer.write("\r\n");
+            }
+            PropertyAccessor[] accessors = new PropertyAccessor[fields.size()];
+            DRIValueFormatter[] valueFormatters = null;
+            while (rows.hasNext()) {
+                Object item = rows.next();
+                if (valueFormatters == null && item != null) {
+                    valueFormatters = findValueFormatters(item, fields, typeFormatters, request);
+                }
+                for (int i = 0; i < accessors.length; i++) {
+                    Object value = null;
+                    if (item != null) {
+                        // Reuse the accessor while rows have the same class
+                        if (accessors[i] == null || accessors[i].getOwnerClass() != item.getClass()) {
+                            accessors[i] = PropertyAccessor.forPath(item.getClass(), fields.get(i));
+                        }
+                        value = accessors[i].getValue(item);
+                    }
+                    writeCell(writer, i, format(value, valueFormatters != null ? valueFormatters[i] : null));
+                }
+                writer.write("\r\n");
+            }
+            writer.close(); // Also finishes gzip stream
+        } catch (IOException ex) {
+            throw new TemplateProcessingException("There was an error generating CSV file", ex);
+        }
+    }
+
+    /**
+     * Finds the formatter of each field from the TypeFormatter of its type in the sample row.
+     */
+    private DRIValueFormatter[] findValueFormatters(Object sample, List<String> fields,
+                                                    TypeFormatterRegistry typeFormatters, HttpServletRequest request) {
+        DRIValueFormatter[] valueFormatters = new DRIValueFormatter[fields.size()];
+        for (int i = 0; i < fields.size(); i++) {
+            Class fieldClass = PagesDialectUtil.getPropertyClass(sample.getClass(), fields.get(i));
+            TypeFormatter typeFormatter = typeFormatters != null ? typeFormatters.getTypeFormatter(fieldClass) : null;
+            if (typeFormatter != null) {
+                valueFormatters[i] = typeFormatter.getDRIValueFormatter(request);
+            }
+        }
+        return valueFormatters;
+    }
+
+    private boolean isFormula(String value) {
+        if (value.length() == 0) {
+            return false;
+        }
+        char first = value.charAt(0);
+        return (first == '=' || first == '+' || first == '-' || first == '@' || first == '\t' || first == '\r')
+                && !NUMBER.matcher(value).matches();
+    }
+
+    private String format(Object value, DRIValueFormatter valueFormatter) {
+        if (value == null) {
+            return "";
+        } else if (valueFormatter != null && valueFormatter.getValueClass().isInstance(value)) {
+            Object formatted = valueFormatter.format(value, null);
+            return formatted != null ? formatted.toString() : "";
+        } else {
+            return value.toString();
+        }
+    }
+
+    /**
+     * Writes a cell, quoting it if it contains separators, quotes or line breaks. Cells which spreadsheets would
+     * run as formulas are prefixed with an apostrophe.
+     */
+    private void writeCell(Writer writer, int column, String value) throws IOException {
+        if (column > 0) {
+            writer.write(',');
+        }
+        if (isFormula(value)) {
+            value = "'" + value;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (quote) {
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        } else {
+            writer.write(value);
+        }
+    }
+}
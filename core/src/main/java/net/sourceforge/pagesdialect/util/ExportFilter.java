@@ -47,7 +47,7 @@ public class ExportFilter implements Filter {
         if (exportPerformer.notExportingInProcess()) {
             chain.doFilter(sRequest, sResponse);
         } else {
-            chain.doFilter(sRequest, new IgnorableHttpServletResponse(response)); // FIXME: figure out some way to avoid the whole template processing
+            chain.doFilter(sRequest, new IgnorableHttpServletResponse(response)); // Set exportFastPath dialect property to avoid the whole template processing
             sResponse.reset(); // Remove previous response, if any
             exportPerformer.performExport();
         }
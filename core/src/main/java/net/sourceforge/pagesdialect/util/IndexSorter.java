@@ -0,0 +1,228 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+
+/**
+ * Sorts row positions instead of rows, so sort keys are extracted once per row and not once per comparison.
+ */
+public class IndexSorter {
+
+    // Ranges shorter than this are sorted by insertion.
+    private static final int INSERTION_SORT_THRESHOLD = 7;
+
+    /**
+     * Returns the row positions 0..size-1 in sorted order. The sort is stable.
+     */
+    public static int[] sort(int size, RowComparator comparator) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        int[] aux = order.clone();
+        mergeSort(aux, order, 0, size, comparator);
+        return order;
+    }
+
+    /**
+     * Same as {@link #sort(int, RowComparator)}, but sorting ranges of rows in parallel with provided executor and
+     * merging them pairwise, also in parallel. The comparator must be thread safe.
+     *
+     * @param parallelism number of ranges sorted in parallel.
+     */
+    public static int[] parallelSort(int size, final RowComparator comparator, ExecutorService executor, int parallelism) {
+        int ranges = Math.min(parallelism, size / INSERTION_SORT_THRESHOLD);
+        if (ranges < 2) {
+            return sort(size, comparator);
+        }
+        final int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        final int[] aux = order.clone();
+        int[] bounds = new int[ranges + 1];
+        for (int i = 0; i <= ranges; i++) {
+            bounds[i] = (int) ((long) size * i / ranges);
+        }
+        // Sort each range into order
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (int i = 0; i < ranges; i++) {
+            final int low = bounds[i];
+            final int high = bounds[i + 1];
+            tasks.add(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    mergeSort(aux, order, low, high, comparator);
+                    return null;
+                }
+            });
+        }
+        invokeAll(executor, tasks);
+        // Merge adjacent ranges until one is left, swapping source and destination arrays at each round
+        int[] src = order;
+        int[] dest = aux;
+        while (bounds.length > 2) {
+            int[] merged = new int[bounds.length / 2 + 1];
+            tasks.clear();
+            int m = 0;
+            for (int i = 0; i + 1 < bounds.length; i += 2) {
+                final int low = bounds[i];
+                final int mid = bounds[i + 1];
+                final int high = i + 2 < bounds.length ? bounds[i + 2] : mid;
+                final int[] from = src;
+                final int[] to = dest;
+                tasks.add(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        merge(from, to, low, mid, high, comparator);
+                        return null;
+                    }
+                });
+                merged[m++] = low;
+            }
+            merged[m] = size;
+            invokeAll(executor, tasks);
+            bounds = merged;
+            int[] swap = src;
+            src = dest;
+            dest = swap;
+        }
+        return src;
+    }
+
+    private static void invokeAll(ExecutorService executor, List<Callable<Object>> tasks) {
+        try {
+            for (Future<Object> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new TemplateProcessingException("Sort interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new TemplateProcessingException("Error while sorting", ex.getCause());
+        }
+    }
+
+    /**
+     * Returns the row positions 0..size-1 with only the first k positions in sorted order, selected with a bounded
+     * heap in O(size log k). Remaining positions follow in their original order. Ties keep the original order.
+     */
+    public static int[] sortTop(int size, int k, final RowComparator comparator) {
+        if (k >= size) {
+            return sort(size, comparator);
+        }
+        RowComparator stableComparator = new RowComparator() {
+            @Override
+            public int compare(int rowA, int rowB) {
+                int result = comparator.compare(rowA, rowB);
+                return result != 0 ? result : rowA - rowB;
+            }
+        };
+        // Max-heap holding the k smallest rows seen so far
+        int[] heap = new int[k];
+        int heapSize = 0;
+        for (int row = 0; row < size && k > 0; row++) {
+            if (heapSize < k) {
+                heap[heapSize] = row;
+                siftUp(heap, heapSize++, stableComparator);
+            } else if (stableComparator.compare(row, heap[0]) < 0) {
+                heap[0] = row;
+                siftDown(heap, 0, heapSize, stableComparator);
+            }
+        }
+        int[] order = new int[size];
+        boolean[] selected = new boolean[size];
+        // Drain heap from greatest to smallest
+        for (int i = heapSize - 1; i >= 0; i--) {
+            order[i] = heap[0];
+            selected[heap[0]] = true;
+            heap[0] = heap[i];
+            siftDown(heap, 0, i, stableComparator);
+        }
+        int position = heapSize;
+        for (int row = 0; row < size; row++) {
+            if (!selected[row]) {
+                order[position++] = row;
+            }
+        }
+        return order;
+    }
+
+    private static void siftUp(int[] heap, int index, RowComparator comparator) {
+        int row = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (comparator.compare(row, heap[parent]) <= 0) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = row;
+    }
+
+    private static void siftDown(int[] heap, int index, int heapSize, RowComparator comparator) {
+        int row = heap[index];
+        int half = heapSize >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < heapSize && comparator.compare(heap[child + 1], heap[child]) > 0) {
+                child++;
+            }
+            if (comparator.compare(row, heap[child]) >= 0) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = row;
+    }
+
+    /**
+     * Merges the sorted ranges [low, mid) and [mid, high) of src into dest. Ties keep the left row first.
+     */
+    private static void merge(int[] src, int[] dest, int low, int mid, int high, RowComparator comparator) {
+        for (int i = low, p = low, q = mid; i < high; i++) {
+            if (q >= high || p < mid && comparator.compare(src[p], src[q]) <= 0) {
+                dest[i] = src[p++];
+            } else {
+                dest[i] = src[q++];
+            }
+        }
+    }
+
+    /**
+     * Merge sort with src and dest swapping roles at each level. Both arrays must hold the same values
+     * in [low, high) on entry; the sorted range is left in dest.
+     */
+    private static void mergeSort(int[] src, int[] dest, int low, int high, RowComparator comparator) {
+        int length = high - low;
+        if (length < INSERTION_SORT_THRESHOLD) {
+            for (int i = low; i < high; i++) {
+                for (int j = i; j > low && comparator.compare(dest[j - 1], dest[j]) > 0; j--) {
+                    int swap = dest[j];
+                    dest[j] = dest[j - 1];
+                    dest[j - 1] = swap;
+                }
+            }
+            return;
+        }
+        int mid = (low + high) >>> 1;
+        mergeSort(dest, src, low, mid, comparator);
+        mergeSort(dest, src, mid, high, comparator);
+        // Halves already in order
+        if (comparator.compare(src[mid - 1], src[mid]) <= 0) {
+            System.arraycopy(src, low, dest, low, length);
+            return;
+        }
+        merge(src, dest, low, mid, high, comparator);
+    }
+}
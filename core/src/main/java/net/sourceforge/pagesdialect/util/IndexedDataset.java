@@ -0,0 +1,118 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A list shared among requests with a sort index for each of its sortable fields, so sorting the list by one
+ * of those fields is a lookup instead of a sort.
+ *
+ * Indexes depend on the locale, as texts are compared with locale collation. They are built when the dataset
+ * is published for the default locale, and on first use for other locales.
+ */
+public class IndexedDataset {
+
+    private final String name;
+    private final List list;
+    private final List<String> sortFields;
+    private final ConcurrentMap<String, int[]> indexes = new ConcurrentHashMap<String, int[]>();
+
+    /**
+     * @param list rows of the dataset. It must not be modified after publishing.
+     * @param sortFields fields to index, as used in pages:sort.
+     */
+    public IndexedDataset(String name, List list, String... sortFields) {
+        this.name = name;
+        this.list = Collections.unmodifiableList(list);
+        this.sortFields = Arrays.asList(sortFields);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the read-only list of rows. This is the instance which must be added to the model, so pages:sort
+     * finds its indexes.
+     */
+    public List getList() {
+        return list;
+    }
+
+    public List<String> getSortFields() {
+        return sortFields;
+    }
+
+    /**
+     * Returns true if the field is indexed for sorting.
+     */
+    public boolean isIndexed(String field) {
+        return sortFields.contains(field);
+    }
+
+    /**
+     * Returns the sorted row positions for a field, or null if not built yet for the locale.
+     */
+    public int[] getIndex(String field, boolean desc, Locale locale) {
+        return indexes.get(indexKey(field, desc, locale));
+    }
+
+    /**
+     * Stores the sorted row positions for a field. The array must not be modified afterwards.
+     */
+    public void putIndex(String field, boolean desc, Locale locale, int[] index) {
+        if (isIndexed(field)) {
+            indexes.putIfAbsent(indexKey(field, desc, locale), index);
+        }
+    }
+
+    /**
+     * Checks every sortable field can be read from the rows, so a misspelled field fails on publishing instead of
+     * on the first sort.
+     */
+    public void validateSortFields() {
+        if (!list.isEmpty() && list.get(0) != null) {
+            for (String field : sortFields) {
+                PagesDialectUtil.getPropertyClass(list.get(0).getClass(), field);
+            }
+        }
+    }
+
+    /**
+     * Builds the indexes of every sortable field in both directions. Fields sorted by their TypeFormatter, which
+     * may need the request, are left to be built on first use.
+     */
+    public void buildIndexes(ListSorter sorter, TypeFormatterRegistry typeFormatters, Locale locale) {
+        for (String field : sortFields) {
+            if (needsTypeFormatter(field, typeFormatters)) {
+                continue;
+            }
+            for (boolean desc : new boolean[] {false, true}) {
+                if (getIndex(field, desc, locale) == null) {
+                    List<SortField> sort = Collections.singletonList(new SortField(field, desc));
+                    putIndex(field, desc, locale, sorter.sort(list, sort, list.size()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if the field values are not Comparable and are sorted after formatting them.
+     */
+    private boolean needsTypeFormatter(String field, TypeFormatterRegistry typeFormatters) {
+        if (list.isEmpty() || list.get(0) == null || typeFormatters == null) {
+            return false;
+        }
+        Class fieldClass = PagesDialectUtil.getPropertyClass(list.get(0).getClass(), field);
+        return !fieldClass.isPrimitive() && !Comparable.class.isAssignableFrom(fieldClass)
+                && typeFormatters.getTypeFormatter(fieldClass) != null;
+    }
+
+    private String indexKey(String field, boolean desc, Locale locale) {
+        return field + (desc ? "|desc|" : "|asc|") + locale;
+    }
+}
@@ -1,9 +1,12 @@
 package net.sourceforge.pagesdialect.util;
 
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.lang.reflect.Array;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import org.thymeleaf.Arguments;
 import org.thymeleaf.context.IWebContext;
 import org.thymeleaf.dom.Element;
@@ -14,8 +17,13 @@ import org.thymeleaf.exceptions.TemplateProcessingException;
  */
 public class IterationListPreparer {
 
+    // Request attribute of the first paged list. Next ones have a "_1", "_2" suffix
     public static final String PAGED_LIST_HOLDER_ATTR = "net_sourceforge_pagesdialect_PagesDialect_pagedListHolder";
 
+    // Node property of the th:each element holding its paged list
+    private static final String PAGED_LIST_HOLDER_PROPERTY = PAGED_LIST_HOLDER_ATTR;
+    private static final String PAGED_LIST_COUNT_ATTR = "net_sourceforge_pagesdialect_PagesDialect_pagedListCount";
+
     private Arguments arguments;
     private Element elementContainingIteration;
 
@@ -24,15 +32,24 @@ public class IterationListPreparer {
         this.elementContainingIteration = elementContainingIteration;
     }
 
+    /**
+     * Returns the RecoverablePagedListHolder which replaced the iteration object of the element, or null if not
+     * created yet.
+     */
+    public static RecoverablePagedListHolder findIterationList(Element elementContainingIteration) {
+        return (RecoverablePagedListHolder) elementContainingIteration.getNodeProperty(PAGED_LIST_HOLDER_PROPERTY);
+    }
+
     /**
      * Search for iteration expression.
-     * If iteration object is not RecoverablePagedListHolder, replace it.
+     * If iteration object is not RecoverablePagedListHolder, replace it. Each iterating element has its own one.
      */
     public RecoverablePagedListHolder findOrCreateIterationList() {
         // Check if RecoverablePagedListHolder has been already created
         IWebContext context = (IWebContext) arguments.getContext();
-        if (context.getRequestAttributes().containsKey(PAGED_LIST_HOLDER_ATTR)) {
-            return (RecoverablePagedListHolder) context.getRequestAttributes().get(PAGED_LIST_HOLDER_ATTR);
+        RecoverablePagedListHolder existing = findIterationList(elementContainingIteration);
+        if (existing != null) {
+            return existing;
         } else {
             // Create and store RecoverablePagedListHolder.
             IterationListFinder iterationListFinder = new IterationListFinder(arguments, elementContainingIteration);
@@ -40,31 +57,92 @@ public class IterationListPreparer {
             String itemName = iterationListFinder.getItemName();
             String iterationExpression = iterationListFinder.getIterationExpression();
             // Replace original with paged list
-            RecoverablePagedListHolder pagedListHolder = new RecoverablePagedListHolder(convertToList(originalIterable));
-            context.getRequestAttributes().put(PAGED_LIST_HOLDER_ATTR, pagedListHolder);
-            elementContainingIteration.setAttribute(iterationExpression, itemName + " : ${#ctx.requestAttributes." + PAGED_LIST_HOLDER_ATTR + ".pageList}");
+            RecoverablePagedListHolder pagedListHolder;
+            if (originalIterable instanceof PageSource) {
+                pagedListHolder = new PageSourcePagedListHolder((PageSource) originalIterable);
+            } else if (LazyPagedListHolder.isLazySource(originalIterable)) {
+                pagedListHolder = new LazyPagedListHolder(originalIterable);
+            } else {
+                pagedListHolder = new RecoverablePagedListHolder(convertToList(originalIterable));
+            }
+            Integer count = (Integer) context.getRequestAttributes().get(PAGED_LIST_COUNT_ATTR);
+            String holderAttr = count == null ? PAGED_LIST_HOLDER_ATTR : PAGED_LIST_HOLDER_ATTR + "_" + count;
+            context.getRequestAttributes().put(PAGED_LIST_COUNT_ATTR, count == null ? 1 : count + 1);
+            context.getRequestAttributes().put(holderAttr, pagedListHolder);
+            elementContainingIteration.setNodeProperty(PAGED_LIST_HOLDER_PROPERTY, pagedListHolder);
+            elementContainingIteration.setAttribute(iterationExpression, itemName + " : ${#ctx.requestAttributes." + holderAttr + ".pageList}");
             return pagedListHolder;
         }    
     }
     
     
     
+    /**
+     * Returns true if an iterable object has no elements, without copying nor consuming it. An Iterable which is
+     * not a Collection is asked for a new iterator, so it must support repeated iteration. One-shot sources, as in,
+     * a DirectoryStream, must be passed as their Iterator.
+     * @param iterable object of type Collection, Map, Iterable, Iterator, Enumeration, PageSource, KeysetSource or array.
+     */
+    public static boolean isEmpty(Object iterable) {
+        if (iterable instanceof Collection) {
+            return ((Collection) iterable).isEmpty();
+        } else if (iterable instanceof Map) {
+            return ((Map) iterable).isEmpty();
+        } else if (iterable instanceof Iterable) {
+            return !((Iterable) iterable).iterator().hasNext();
+        } else if (iterable instanceof Iterator) {
+            return !((Iterator) iterable).hasNext();
+        } else if (iterable instanceof Enumeration) {
+            return !((Enumeration) iterable).hasMoreElements();
+        } else if (iterable instanceof PageSource) {
+            return ((PageSource) iterable).count() == 0;
+        } else if (iterable instanceof KeysetSource) {
+            return ((KeysetSource) iterable).fetchAfter(null, 1).isEmpty();
+        } else if (iterable != null && iterable.getClass().isArray()) {
+            return Array.getLength(iterable) == 0;
+        } else {
+            return convertToList(iterable).isEmpty();
+        }
+    }
+
     /**
      * Converts an iterable object to a List.
-     * @param iterable object of type List, Collection or array.
+     * @param iterable object of type List, Iterable, Map, Iterator, Enumeration, PageSource, KeysetSource or array.
      * @return a List with the same items as the iterable object.
      */
-    private List convertToList(Object iterable) {
+    public static List convertToList(Object iterable) {
         List list;
         if (iterable instanceof List) {
             list = (List) iterable;
-        } else if (iterable instanceof Collection) {
-            list = new ArrayList((Collection) iterable);
+        } else if (iterable instanceof PageSource) {
+            PageSource pageSource = (PageSource) iterable;
+            list = pageSource.fetch(0, pageSource.count());
+        } else if (iterable instanceof KeysetSource) {
+            list = LazyPagedListHolder.toList(ChunkedIterable.forKeysetSource((KeysetSource) iterable));
+        } else if (LazyPagedListHolder.isLazySource(iterable)) {
+            list = LazyPagedListHolder.toList(iterable);
         } else if (iterable.getClass().isArray()) {
-            list = Arrays.asList(iterable);
+            list = ArrayListView.wrap(iterable);
         } else {
             throw new TemplateProcessingException("Iteration object not recognized");
         }
         return list;
     }
+
+    /**
+     * Returns the elements of an iterable object to be read once, without copying them to a List, as in, to stream
+     * an export. PageSource and KeysetSource rows are fetched in chunks.
+     * @param iterable object of type List, Iterable, Map, Iterator, Enumeration, PageSource, KeysetSource or array.
+     */
+    public static Iterable toIterable(Object iterable) {
+        if (iterable instanceof PageSource) {
+            return ChunkedIterable.forPageSource((PageSource) iterable, Collections.<SortField>emptyList());
+        } else if (iterable instanceof KeysetSource) {
+            return ChunkedIterable.forKeysetSource((KeysetSource) iterable);
+        } else if (LazyPagedListHolder.isLazySource(iterable)) {
+            return LazyPagedListHolder.toIterable(iterable);
+        } else {
+            return convertToList(iterable);
+        }
+    }
 }
@@ -0,0 +1,85 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.util.List;
+
+/**
+ * A page of rows fetched from a KeysetSource. It knows whether there are previous or next rows, but not the
+ * total count nor the page number.
+ */
+public class KeysetPage {
+
+    public static final String KEYSET_PAGE_ATTR = "net_sourceforge_pagesdialect_PagesDialect_keysetPage";
+
+    private List pageList;
+    private String firstKey;
+    private String lastKey;
+    private boolean firstPage;
+    private boolean lastPage;
+    private int pageSize;
+
+    public KeysetPage(List pageList, String firstKey, String lastKey, boolean firstPage, boolean lastPage, int pageSize) {
+        this.pageList = pageList;
+        this.firstKey = firstKey;
+        this.lastKey = lastKey;
+        this.firstPage = firstPage;
+        this.lastPage = lastPage;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Fetches a page, reading one more row to know if there is another page in the same direction.
+     *
+     * @param after key of the last row of previous page, or null.
+     * @param before key of the first row of next page, or null. Ignored if after is set.
+     */
+    public static KeysetPage fetch(KeysetSource source, String after, String before, int pageSize) {
+        List rows = null;
+        boolean firstPage = false;
+        boolean lastPage = false;
+        if (after == null && before != null) {
+            rows = source.fetchBefore(before, pageSize + 1);
+            if (rows.size() > pageSize) {
+                rows = rows.subList(rows.size() - pageSize, rows.size());
+            } else {
+                rows = null; // Back at the beginning, show a full first page
+            }
+        }
+        if (rows == null) {
+            rows = source.fetchAfter(after, pageSize + 1);
+            firstPage = after == null;
+            lastPage = rows.size() <= pageSize;
+            if (!lastPage) {
+                rows = rows.subList(0, pageSize);
+            }
+        }
+        String firstKey = rows.isEmpty() ? null : source.getKey(rows.get(0));
+        String lastKey = rows.isEmpty() ? null : source.getKey(rows.get(rows.size() - 1));
+        return new KeysetPage(rows, firstKey, lastKey, firstPage, lastPage, pageSize);
+    }
+
+    public List getPageList() {
+        return pageList;
+    }
+
+    /** Key of the first row, or null if the page is empty. */
+    public String getFirstKey() {
+        return firstKey;
+    }
+
+    /** Key of the last row, or null if the page is empty. */
+    public String getLastKey() {
+        return lastKey;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public boolean isFirstPage() {
+        return firstPage;
+    }
+
+    public boolean isLastPage() {
+        return lastPage;
+    }
+}
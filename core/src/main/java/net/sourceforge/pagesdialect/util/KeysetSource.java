@@ -0,0 +1,32 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.util.List;
+
+/**
+ * Iteration object for keyset pagination with pages:paginate. Rows are fetched after or before the key of a row,
+ * so deep pages do not skip rows and no total count is needed. Rows are always returned in display order.
+ *
+ * Example usage:
+ * <pre>
+ * {@code
+ *    <div th:each="entry : ${auditLog}" pages:paginate="20">...</div>
+ * }
+ * </pre>
+ */
+public interface KeysetSource<T> {
+
+    /**
+     * Returns up to limit rows following the row with the key, or the first rows if key is null.
+     */
+    List<T> fetchAfter(String key, int limit);
+
+    /**
+     * Returns up to limit rows preceding the row with the key, the closest ones.
+     */
+    List<T> fetchBefore(String key, int limit);
+
+    /**
+     * Returns the key of a row, as it will be sent in after and before request parameters.
+     */
+    String getKey(T row);
+}
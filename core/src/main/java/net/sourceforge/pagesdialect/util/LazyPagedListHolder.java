@@ -0,0 +1,246 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+
+/**
+ * RecoverablePagedListHolder over an Iterable, Map, Iterator or Enumeration which only holds the current page.
+ *
+ * The total number of elements is taken from Collection or Map size. Otherwise, it is counted while looking for
+ * the requested page, so the source is read once. The whole source is only copied to a List if the original list
+ * is requested, as in, to sort or export it.
+ *
+ * An Iterable which is not a Collection may be iterated more than once, as in, to check if it is empty before
+ * paginating it. One-shot sources, as in, a DirectoryStream, must be passed as their Iterator, which is read once.
+ */
+public class LazyPagedListHolder extends RecoverablePagedListHolder {
+
+    private Object source;
+    private boolean materialized = false;
+    private boolean consumed = false;
+    private boolean newPageSet = false;
+    private int requestedPage = 0;
+    private int nrOfElements = -1;
+    private List pageList;
+    private int pageListFirst;
+    private int pageListSize;
+
+    public LazyPagedListHolder(Object source) {
+        super(Collections.EMPTY_LIST);
+        this.source = source;
+        if (source instanceof Collection) {
+            nrOfElements = ((Collection) source).size();
+        } else if (source instanceof Map) {
+            nrOfElements = ((Map) source).size();
+        }
+    }
+
+    /**
+     * Returns true for iteration objects which are not lists nor arrays.
+     */
+    public static boolean isLazySource(Object iterable) {
+        return (iterable instanceof Iterable && !(iterable instanceof List)) || iterable instanceof Map
+                || iterable instanceof Iterator || iterable instanceof Enumeration;
+    }
+
+    /**
+     * Copies every element of a lazy source to a new List.
+     */
+    public static List toList(Object source) {
+        List list = source instanceof Collection ? new ArrayList(((Collection) source).size()) : new ArrayList();
+        for (Iterator it = iterator(source); it.hasNext();) {
+            list.add(it.next());
+        }
+        return list;
+    }
+
+    /**
+     * Returns the elements of a lazy source as an Iterable, without copying them.
+     */
+    public static Iterable toIterable(final Object source) {
+        if (source instanceof Iterable) {
+            return (Iterable) source;
+        }
+        return new Iterable() {
+            @Override
+            public Iterator iterator() {
+                return LazyPagedListHolder.iterator(source);
+            }
+        };
+    }
+
+    @Override
+    public void setPage(int page) {
+        super.setPage(page);
+        this.requestedPage = Math.max(0, page);
+        this.newPageSet = true;
+    }
+
+    @Override
+    public void setPageSize(int pageSize) {
+        if (pageSize != getPageSize() && !newPageSet) {
+            requestedPage = 0; // Same as PagedListHolder
+        }
+        super.setPageSize(pageSize);
+    }
+
+    @Override
+    public int getPage() {
+        newPageSet = false;
+        return super.getPage();
+    }
+
+    @Override
+    public int getNrOfElements() {
+        if (materialized) {
+            return super.getNrOfElements();
+        }
+        if (nrOfElements < 0) {
+            scan();
+        }
+        return nrOfElements;
+    }
+
+    @Override
+    public List getPageList() {
+        if (materialized) {
+            return super.getPageList();
+        }
+        if (nrOfElements < 0) {
+            scan();
+        }
+        int first = getFirstElementOnPage();
+        if (pageList == null || pageListFirst != first || pageListSize != getPageSize()) {
+            readPage(first);
+        }
+        return pageList;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        if (materialized) {
+            return super.isEmpty();
+        }
+        if (nrOfElements >= 0) {
+            return nrOfElements == 0;
+        }
+        return IterationListPreparer.isEmpty(source);
+    }
+
+    @Override
+    public Iterable getOriginalRows() {
+        if (materialized) {
+            return super.getOriginalRows();
+        }
+        final Iterator iterator = readSource();
+        return new Iterable() {
+            @Override
+            public Iterator iterator() {
+                return iterator;
+            }
+        };
+    }
+
+    @Override
+    public List getOriginalList() {
+        if (!materialized) {
+            if (consumed) {
+                throw new TemplateProcessingException("Iteration object has already been read");
+            }
+            setOriginalList(toList(source));
+            consumed = source instanceof Iterator || source instanceof Enumeration;
+        }
+        return super.getOriginalList();
+    }
+
+    @Override
+    public void setOriginalList(List originalList) {
+        super.setOriginalList(originalList);
+        this.materialized = true;
+        this.pageList = null;
+    }
+
+    /**
+     * Counts every element, keeping the requested page, or the last one if there are fewer pages.
+     */
+    private void scan() {
+        int pageSize = getPageSize();
+        List buffer = new ArrayList(pageSize);
+        int bufferFirst = 0;
+        int i = 0;
+        for (Iterator it = readSource(); it.hasNext(); i++) {
+            Object item = it.next();
+            if (i / pageSize <= requestedPage) {
+                if (i % pageSize == 0) {
+                    buffer = new ArrayList(pageSize);
+                    bufferFirst = i;
+                }
+                buffer.add(item);
+            }
+        }
+        nrOfElements = i;
+        pageList = buffer;
+        pageListFirst = bufferFirst;
+        pageListSize = pageSize;
+    }
+
+    /**
+     * Skips elements before the first one and keeps a page.
+     */
+    private void readPage(int first) {
+        int pageSize = getPageSize();
+        List buffer = new ArrayList(pageSize);
+        Iterator it = readSource();
+        for (int i = 0; i < first && it.hasNext(); i++) {
+            it.next();
+        }
+        while (buffer.size() < pageSize && it.hasNext()) {
+            buffer.add(it.next());
+        }
+        pageList = buffer;
+        pageListFirst = first;
+        pageListSize = pageSize;
+    }
+
+    private Iterator readSource() {
+        if (consumed) {
+            throw new TemplateProcessingException("Iteration object has already been read");
+        }
+        consumed = source instanceof Iterator || source instanceof Enumeration;
+        return iterator(source);
+    }
+
+    private static Iterator iterator(Object source) {
+        if (source instanceof Map) {
+            return ((Map) source).entrySet().iterator();
+        } else if (source instanceof Iterable) {
+            return ((Iterable) source).iterator();
+        } else if (source instanceof Iterator) {
+            return (Iterator) source;
+        } else {
+            final Enumeration enumeration = (Enumeration) source;
+            return new Iterator() {
+                @Override
+                public boolean hasNext() {
+                    return enumeration.hasMoreElements();
+                }
+
+                @Override
+                public Object next() {
+                    return enumeration.nextElement();
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
+        }
+    }
+}
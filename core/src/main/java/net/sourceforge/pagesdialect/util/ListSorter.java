@@ -0,0 +1,60 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Sorts a list by a sort specification, returning the sorted row positions. The list is not modified.
+ *
+ * The sort keys of every row are extracted once, then rows are compared by the first field, then by the second
+ * one if equal, and so on. Null values go first in ascending order.
+ */
+public class ListSorter {
+
+    private SortKeyExtractor extractor;
+    private ExecutorService executor;
+    private int parallelThreshold;
+
+    /**
+     * @param executor executor to sort large lists in parallel, or null to always sort in the calling thread.
+     * @param parallelThreshold minimum list size to sort in parallel.
+     */
+    public ListSorter(SortKeyExtractor extractor, ExecutorService executor, int parallelThreshold) {
+        this.extractor = extractor;
+        this.executor = executor;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * @param rowsToSort only this number of leading rows is guaranteed to be sorted.
+     * @return sorted row positions.
+     */
+    public int[] sort(List list, List<SortField> sortFields, int rowsToSort) {
+        final SortKeyColumn[] columns = new SortKeyColumn[sortFields.size()];
+        for (int i = 0; i < sortFields.size(); i++) {
+            columns[i] = extractor.extract(list, sortFields.get(i));
+        }
+        RowComparator rowComparator = columns.length == 1 ? columns[0] : new RowComparator() {
+            @Override
+            public int compare(int rowA, int rowB) {
+                for (SortKeyColumn column : columns) {
+                    int result = column.compare(rowA, rowB);
+                    if (result != 0) {
+                        return result;
+                    }
+                }
+                return 0;
+            }
+        };
+        int[] order;
+        if (rowsToSort < list.size()) {
+            order = IndexSorter.sortTop(list.size(), rowsToSort, rowComparator);
+        } else if (executor != null && list.size() >= parallelThreshold) {
+            int parallelism = Runtime.getRuntime().availableProcessors();
+            order = IndexSorter.parallelSort(list.size(), rowComparator, executor, parallelism);
+        } else {
+            order = IndexSorter.sort(list.size(), rowComparator);
+        }
+        return order;
+    }
+}
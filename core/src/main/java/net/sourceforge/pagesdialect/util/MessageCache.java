@@ -0,0 +1,218 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.MessageFormat;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import net.sourceforge.pagesdialect.PagesDialect;
+import org.thymeleaf.Arguments;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+import org.thymeleaf.util.MessageResolutionUtils;
+
+/**
+ * Cache of compiled messages for navigation and export labels.
+ *
+ * Messages are looked up first in template messages, as in, the Spring MessageSource, and then in the PagesDialect
+ * bundle. Each key is resolved once per template and locale, and its MessageFormat is compiled once. Call clear()
+ * after reloading template messages.
+ */
+public class MessageCache {
+
+    private static final String BUNDLE_PATH = PagesDialect.class.getName().replace('.', '/');
+
+    // Marker for keys not found
+    private static final CompiledMessage ABSENT = new CompiledMessage("", null);
+
+    private final ConcurrentMap<MessageKey, CompiledMessage> templateMessages = new ConcurrentHashMap<MessageKey, CompiledMessage>();
+    private final ConcurrentMap<MessageKey, CompiledMessage> bundleMessages = new ConcurrentHashMap<MessageKey, CompiledMessage>();
+    private final ConcurrentMap<MessageKey, CompiledMessage> defaultMessages = new ConcurrentHashMap<MessageKey, CompiledMessage>();
+    private final ConcurrentMap<Locale, Properties> bundles = new ConcurrentHashMap<Locale, Properties>();
+
+    /**
+     * Returns the formatted message.
+     *
+     * @param defaultMessage message pattern used if the key is not found, or null to return the absent message
+     * representation, as in, "??key_en??".
+     */
+    public String getMessage(Arguments arguments, String messageKey, String defaultMessage, Object... params) {
+        Locale locale = arguments.getContext().getLocale();
+        CompiledMessage message = getTemplateMessage(arguments, locale, messageKey);
+        if (message == ABSENT) {
+            message = getBundleMessage(locale, messageKey);
+        }
+        if (message == ABSENT) {
+            if (defaultMessage == null) {
+                return MessageResolutionUtils.getAbsentMessageRepresentation(messageKey, locale);
+            }
+            MessageKey key = new MessageKey(null, locale, defaultMessage);
+            message = defaultMessages.get(key);
+            if (message == null) {
+                message = new CompiledMessage(defaultMessage, locale);
+                message.compile(); // Default messages are always formatted
+                defaultMessages.put(key, message);
+            }
+        }
+        return message.format(params);
+    }
+
+    /**
+     * Returns the template message without parameters, or null if not found, as in, export column headers.
+     */
+    public String findTemplateMessage(Arguments arguments, String messageKey) {
+        CompiledMessage message = getTemplateMessage(arguments, arguments.getContext().getLocale(), messageKey);
+        return message != ABSENT ? message.format(new Object[0]) : null;
+    }
+
+    /**
+     * Loads every message of the PagesDialect bundle for the locales, as in, at startup.
+     */
+    public void warmUp(Locale... locales) {
+        for (Locale locale : locales) {
+            for (Enumeration keys = getBundle(locale).propertyNames(); keys.hasMoreElements();) {
+                getBundleMessage(locale, (String) keys.nextElement());
+            }
+        }
+    }
+
+    public void clear() {
+        templateMessages.clear();
+        bundleMessages.clear();
+        defaultMessages.clear();
+        bundles.clear();
+    }
+
+    private CompiledMessage getTemplateMessage(Arguments arguments, Locale locale, String messageKey) {
+        MessageKey key = new MessageKey(arguments.getTemplateName(), locale, messageKey);
+        CompiledMessage message = templateMessages.get(key);
+        if (message == null) {
+            // Without parameters, the message pattern is returned
+            String pattern = MessageResolutionUtils.resolveMessageForTemplate(arguments, messageKey, new Object[0], false);
+            message = pattern != null ? new CompiledMessage(pattern, locale) : ABSENT;
+            templateMessages.put(key, message);
+        }
+        return message;
+    }
+
+    private CompiledMessage getBundleMessage(Locale locale, String messageKey) {
+        MessageKey key = new MessageKey(null, locale, messageKey);
+        CompiledMessage message = bundleMessages.get(key);
+        if (message == null) {
+            String pattern = getBundle(locale).getProperty(messageKey);
+            message = pattern != null ? new CompiledMessage(pattern, locale) : ABSENT;
+            bundleMessages.put(key, message);
+        }
+        return message;
+    }
+
+    /**
+     * Returns the PagesDialect messages for the locale, as in, PagesDialect_es.properties with defaults from
+     * PagesDialect.properties. Unlike ResourceBundle, the JVM default locale is not used as fallback.
+     */
+    private Properties getBundle(Locale locale) {
+        Properties bundle = bundles.get(locale);
+        if (bundle == null) {
+            bundle = loadProperties(BUNDLE_PATH, null);
+            if (locale.getLanguage().length() > 0) {
+                bundle = loadProperties(BUNDLE_PATH + "_" + locale.getLanguage(), bundle);
+                if (locale.getCountry().length() > 0) {
+                    bundle = loadProperties(BUNDLE_PATH + "_" + locale.getLanguage() + "_" + locale.getCountry(), bundle);
+                    if (locale.getVariant().length() > 0) {
+                        bundle = loadProperties(BUNDLE_PATH + "_" + locale.getLanguage() + "_" + locale.getCountry()
+                                + "_" + locale.getVariant(), bundle);
+                    }
+                }
+            }
+            bundles.put(locale, bundle);
+        }
+        return bundle;
+    }
+
+    /**
+     * Loads a properties file, if found, with the provided defaults.
+     */
+    private Properties loadProperties(String path, Properties defaults) {
+        InputStream input = PagesDialect.class.getClassLoader().getResourceAsStream(path + ".properties");
+        if (input == null) {
+            return defaults != null ? defaults : new Properties();
+        }
+        Properties properties = new Properties(defaults);
+        try {
+            try {
+                properties.load(input);
+            } finally {
+                input.close();
+            }
+        } catch (IOException ex) {
+            throw new TemplateProcessingException("Error reading " + path, ex);
+        }
+        return properties;
+    }
+
+    /**
+     * Message pattern, formatted with a MessageFormat compiled on first use with parameters.
+     */
+    private static class CompiledMessage {
+
+        private final String pattern;
+        private final Locale locale;
+        private volatile MessageFormat messageFormat;
+
+        CompiledMessage(String pattern, Locale locale) {
+            this.pattern = pattern;
+            this.locale = locale;
+        }
+
+        void compile() {
+            messageFormat = new MessageFormat(pattern, locale);
+        }
+
+        String format(Object[] params) {
+            MessageFormat format = messageFormat;
+            if (format == null) {
+                if (params.length == 0) {
+                    return pattern;
+                }
+                compile();
+                format = messageFormat;
+            }
+            synchronized (format) { // MessageFormat is not thread safe
+                return format.format(params);
+            }
+        }
+    }
+
+    private static class MessageKey {
+
+        private final String templateName;
+        private final Locale locale;
+        private final String messageKey;
+
+        MessageKey(String templateName, Locale locale, String messageKey) {
+            this.templateName = templateName;
+            this.locale = locale;
+            this.messageKey = messageKey;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof MessageKey)) {
+                return false;
+            }
+            MessageKey other = (MessageKey) obj;
+            return messageKey.equals(other.messageKey)
+                    && (locale == null ? other.locale == null : locale.equals(other.locale))
+                    && (templateName == null ? other.templateName == null : templateName.equals(other.templateName));
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = messageKey.hashCode();
+            hash = 31 * hash + (locale != null ? locale.hashCode() : 0);
+            return 31 * hash + (templateName != null ? templateName.hashCode() : 0);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of rendered navigation bar fragments shared among requests.
+ *
+ * Fragments are keyed by everything they show, as in, page, page count, element counts and locale. The page URL
+ * is not part of the key. It is replaced in the cached fragment on every use.
+ */
+public class NavigationBarCache {
+
+    private final int maxSize;
+    private final Map<String, String> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxSize maximum number of cached fragments.
+     */
+    public NavigationBarCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached fragment, or null if not found.
+     */
+    public String get(String key) {
+        String fragment;
+        synchronized (entries) {
+            fragment = entries.get(key);
+        }
+        if (fragment == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return fragment;
+    }
+
+    public void put(String key, String fragment) {
+        synchronized (entries) {
+            entries.put(key, fragment);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+}
@@ -1,32 +1,49 @@
 package net.sourceforge.pagesdialect.util;
 
-import java.text.MessageFormat;
-import javax.servlet.http.HttpServletRequest;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.http.HttpServletResponse;
 
 import net.sourceforge.pagesdialect.PagesDialect;
 import org.springframework.beans.support.PagedListHolder;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 import org.thymeleaf.Arguments;
 import org.thymeleaf.context.IWebContext;
+import org.thymeleaf.dom.Attribute;
+import org.thymeleaf.dom.DOMSelector;
 import org.thymeleaf.dom.Element;
+import org.thymeleaf.dom.Macro;
+import org.thymeleaf.dom.Node;
 import org.thymeleaf.dom.Text;
 
 /**
  * Utility class to add a page navigation bar and result count.
  */
 public class NavigationBarRenderer {
+
+    public static final String PAGE_HINTS_ATTR = "net_sourceforge_pagesdialect_PagesDialect_pageHints";
+
+    // Replaced by the page URL prefix in cached navigation bars
+    private static final String PAGE_URL_MARKER = "__pagesdialect_page_url__";
     
     private Arguments arguments;
     private Element element;
     private PagesDialect dialect;
     private Element container;
+    private Node navigationNode;
+    private Element fragment;
     private int pageCount;
+    private int pageSize;
     private int page;
     private long nrOfElements;
     private int firstElementOnPage;
     private int lastElementOnPage;
     private boolean firstPage;
     private boolean lastPage;
+    private boolean countKnown = true;
+    private KeysetPage keysetPage;
+    private String pageUrlPrefix;
 
     /** Constructor using spring PagedListHolder object. */
     public NavigationBarRenderer(Arguments arguments, Element element, PagesDialect dialect, PagedListHolder pagedList) {
@@ -34,6 +51,7 @@ public class NavigationBarRenderer {
         this.element = element;
         this.dialect = dialect;
         pageCount = pagedList.getPageCount();
+        pageSize = pagedList.getPageSize();
         page = pagedList.getPage();
         nrOfElements = pagedList.getNrOfElements();
         firstElementOnPage = pagedList.getFirstElementOnPage();
@@ -48,28 +66,219 @@ public class NavigationBarRenderer {
         this.element = element;
         this.dialect = dialect;
         pageCount = pagedList.getTotalPages();
+        pageSize = pagedList.getSize();
         page = pagedList.getNumber();
         nrOfElements = pagedList.getTotalElements();
         firstElementOnPage = pagedList.getNumber() * pagedList.getSize();
         lastElementOnPage = pagedList.getNumber() * pagedList.getSize() + pagedList.getNumberOfElements() - 1;
-        firstPage = pagedList.isFirstPage();
-        lastPage = pagedList.isLastPage();
+        firstPage = pagedList.isFirst();
+        lastPage = pagedList.isLast();
+    }
+
+    /** Constructor using spring-data Slice object, which has no total count. */
+    public NavigationBarRenderer(Arguments arguments, Element element, PagesDialect dialect, Slice slice) {
+        this.arguments = arguments;
+        this.element = element;
+        this.dialect = dialect;
+        countKnown = false;
+        page = slice.getNumber();
+        pageSize = slice.getSize();
+        firstElementOnPage = slice.getNumber() * slice.getSize();
+        lastElementOnPage = slice.getNumber() * slice.getSize() + slice.getNumberOfElements() - 1;
+        firstPage = !slice.hasPrevious();
+        lastPage = !slice.hasNext();
     }
 
-    void addNavigationBar() {
-        addNavigationLinksIfNeeded();
-        addNumberOfResultsText();
+    /** Constructor using a KeysetPage object, which has no page number nor total count. */
+    public NavigationBarRenderer(Arguments arguments, Element element, PagesDialect dialect, KeysetPage keysetPage) {
+        this.arguments = arguments;
+        this.element = element;
+        this.dialect = dialect;
+        this.keysetPage = keysetPage;
+        countKnown = false;
+        pageSize = keysetPage.getPageSize();
+        firstElementOnPage = 0;
+        lastElementOnPage = keysetPage.getPageList().size() - 1;
+        firstPage = keysetPage.isFirstPage();
+        lastPage = keysetPage.isLastPage();
     }
 
-    private void addNavigationLinksIfNeeded() {
+    public void addNavigationBar() {
         container = PagesDialectUtil.getContainerElement(element);
-        if (pageCount > 1) {
+        NavigationBarCache cache = dialect.getNavigationBarCache();
+        if (cache != null && keysetPage == null) {
+            addCachedNavigationBar(cache);
+        } else {
+            addNavigationLinksIfNeeded();
+            addNumberOfResultsText();
+        }
+        addPageSizeLinksIfNeeded();
+        addPageHintsIfNeeded();
+    }
+
+    /**
+     * Adds the navigation links and the number of results as a single prebuilt node, rendering them only if they
+     * are not in the cache.
+     */
+    private void addCachedNavigationBar(NavigationBarCache cache) {
+        String key = getCacheKey();
+        String html = cache.get(key);
+        if (html == null) {
+            // Render into a detached element, with a marker instead of the page URL
+            fragment = new Element("fragment");
+            pageUrlPrefix = PAGE_URL_MARKER;
+            addNavigationLinksIfNeeded();
+            addNumberOfResultsText();
+            pageUrlPrefix = null;
+            StringBuilder sb = new StringBuilder();
+            for (Node node : fragment.getChildren()) {
+                appendHtml(sb, node);
+            }
+            html = sb.toString();
+            fragment = null;
+            cache.put(key, html);
+        }
+        getPageUrl(0); // Build page URL prefix
+        Macro macro = new Macro(html.replace(PAGE_URL_MARKER, escapeHtml(pageUrlPrefix)));
+        container.getParent().insertAfter(container, macro);
+        navigationNode = macro;
+    }
+
+    /**
+     * Returns a key with every value shown in the navigation bar, except the page URL.
+     */
+    private String getCacheKey() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(arguments.getTemplateName()).append('|').append(arguments.getContext().getLocale()).append('|');
+        sb.append(countKnown).append('|').append(page).append('|').append(pageCount).append('|');
+        sb.append(nrOfElements).append('|').append(firstElementOnPage).append('|').append(lastElementOnPage).append('|');
+        sb.append(firstPage).append('|').append(lastPage).append('|').append(dialect.getPaginateWindow());
+        return sb.toString();
+    }
+
+    private void appendHtml(StringBuilder sb, Node node) {
+        if (node instanceof Element) {
+            Element child = (Element) node;
+            sb.append('<').append(child.getOriginalName());
+            for (Map.Entry<String, Attribute> attribute : child.getAttributeMap().entrySet()) {
+                sb.append(' ').append(attribute.getKey()).append("=\"");
+                sb.append(escapeHtml(attribute.getValue().getValue())).append('"');
+            }
+            sb.append('>');
+            for (Node grandchild : child.getChildren()) {
+                appendHtml(sb, grandchild);
+            }
+            sb.append("</").append(child.getOriginalName()).append('>');
+        } else if (node instanceof Text) {
+            sb.append(escapeHtml(((Text) node).getContent()));
+        }
+    }
+
+    private static String escapeHtml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    /**
+     * Inserts a node right after the container element, or at the beginning of the fragment being cached.
+     */
+    private void insertAfterContainer(Node node) {
+        if (fragment != null) {
+            fragment.insertChild(0, node);
+        } else {
+            container.getParent().insertAfter(container, node);
+        }
+    }
+
+    /**
+     * Adds links to change the page size, if the pageSizes property is set, like:
+     *
+     * <pre>
+     * {@code
+     *    <span class="paginate-sizes">Rows per page: <a href="...">10</a> <span class="paginate-size-current">20</span>
+     *    <a href="...">50</a></span>
+     * }
+     * </pre>
+     */
+    private void addPageSizeLinksIfNeeded() {
+        List<Integer> pageSizes = dialect.getPageSizes();
+        if (pageSizes.isEmpty() || (countKnown && nrOfElements == 0) || (!countKnown && firstPage && lastElementOnPage < firstElementOnPage)) {
+            return;
+        }
+        Element sizes = new Element("span");
+        sizes.setAttribute("class", "paginate-sizes");
+        sizes.addChild(new Text(getMessageOrDefault(arguments, "Rows per page:", PagesDialect.I18N_PAGE_SIZES) + " "));
+        String[] removedParams = {dialect.getPageParameter(), dialect.getAfterParameter(), dialect.getBeforeParameter()};
+        for (Integer size : pageSizes) {
+            Element sizeElement;
+            if (size.intValue() == pageSize) {
+                sizeElement = new Element("span");
+                sizeElement.setAttribute("class", "paginate-size-current");
+            } else {
+                sizeElement = new Element("a");
+                sizeElement.setAttribute("class", "paginate-size");
+                sizeElement.setAttribute("href", getUrl(removedParams, dialect.getPageSizeParameter(), size.toString()));
+            }
+            sizeElement.addChild(new Text(size.toString()));
+            sizes.addChild(sizeElement);
+            sizes.addChild(new Text(" "));
+        }
+        container.getParent().insertAfter(navigationNode != null ? navigationNode : container, sizes);
+    }
+
+    /**
+     * Adds Link response headers and prefetch link elements for previous and next pages, if enabled by the
+     * linkHeaders and prefetchLinks properties. Only the first paginated iteration of the page adds them.
+     */
+    private void addPageHintsIfNeeded() {
+        boolean linkHeaders = "true".equals(dialect.getProperties().get(PagesDialect.LINK_HEADERS));
+        boolean prefetchLinks = "true".equals(dialect.getProperties().get(PagesDialect.PREFETCH_LINKS));
+        if (!linkHeaders && !prefetchLinks) {
+            return;
+        }
+        IWebContext context = (IWebContext) arguments.getContext();
+        if (context.getRequestAttributes().containsKey(PAGE_HINTS_ATTR)
+                || PagesDialectUtil.isExportRequest(context.getHttpServletRequest())) {
+            return;
+        }
+        context.getRequestAttributes().put(PAGE_HINTS_ATTR, Boolean.TRUE);
+        String previousUrl = firstPage ? null : getPreviousUrl();
+        String nextUrl = lastPage ? null : getNextUrl();
+        if (linkHeaders) {
+            HttpServletResponse response = context.getHttpServletResponse();
+            if (previousUrl != null) {
+                response.addHeader("Link", "<" + previousUrl + ">; rel=\"prev\"");
+            }
+            if (nextUrl != null) {
+                response.addHeader("Link", "<" + nextUrl + ">; rel=\"next\"");
+            }
+        }
+        if (prefetchLinks && nextUrl != null) {
+            List<Node> heads = new DOMSelector("//head").select((Node) arguments.getDocument());
+            if (!heads.isEmpty()) {
+                Element link = new Element("link");
+                link.setAttribute("rel", "prefetch");
+                link.setAttribute("href", nextUrl);
+                ((Element) heads.get(0)).addChild(link);
+            }
+        }
+    }
+
+    private void addNavigationLinksIfNeeded() {
+        if (countKnown ? pageCount > 1 : !(firstPage && lastPage)) {
             addNavigationLinks();
         }
     }
 
     private void addNumberOfResultsText() {
-        if (nrOfElements > 0) {
+        if (!countKnown) {
+            if (lastElementOnPage >= firstElementOnPage) {
+                if (keysetPage == null) { // Keyset rows positions are not known
+                    addShowingText();
+                }
+            } else if (firstPage) {
+                addNoResult();
+            }
+        } else if (nrOfElements > 0) {
             addResultCount();
         } else {
             addNoResult();
@@ -96,7 +305,25 @@ public class NavigationBarRenderer {
             text = getMessageOrDefault(arguments, "{0} results", PagesDialect.I18N_RESULTS, params);
         }
         resultCount.addChild(new Text(text));
-        container.getParent().insertAfter(container, resultCount);
+        insertAfterContainer(resultCount);
+    }
+
+    /**
+     * Adds a text with the shown results after the container element, when there is no total count, like
+     *
+     * <pre>
+     * {@code
+     *    <span class="paginate-count">Showing 41 - 60</span>
+     * }
+     * </pre>
+     */
+    private void addShowingText() {
+        Element resultCount = new Element("span");
+        resultCount.setAttribute("class", "paginate-count");
+        String[] params = {(firstElementOnPage + 1) + "", (lastElementOnPage + 1) + ""};
+        String text = getMessageOrDefault(arguments, "Showing {0} - {1}", PagesDialect.I18N_SHOWING, params);
+        resultCount.addChild(new Text(text));
+        insertAfterContainer(resultCount);
     }
 
     /**
@@ -107,25 +334,58 @@ public class NavigationBarRenderer {
         noResultElement.setAttribute("class", "paginate-no-result");
         String text = getMessageOrDefault(arguments, "No result found", PagesDialect.I18N_NONE);
         noResultElement.addChild(new Text(text));
-        container.getParent().insertAfter(container, noResultElement);
+        insertAfterContainer(noResultElement);
     }
 
     /**
-     * Returns the page URL with the "page" parameter added or modified.
+     * Returns the page URL with the "page" parameter added or modified. The URL is built once as a template, so
+     * every page link only appends the page number.
      */
     private String getPageUrl(int pageNumber) {
-        HttpServletRequest request = ((IWebContext) arguments.getContext()).getHttpServletRequest();
-        String uri = request.getRequestURL().toString().split("\\?")[0];
-        String query = request.getQueryString();
-        String pageParam = dialect.getPageParameter();
-        if (query == null) {
-            query = pageParam + "=" + pageNumber;
-        } else if (query.contains(pageParam + "=")) {
-            query = query.replaceAll(pageParam + "=[0-9]+", pageParam + "=" + pageNumber);
+        if (pageUrlPrefix == null) {
+            pageUrlPrefix = getUrlBuilder().getUrlPrefix(new String[0], dialect.getPageParameter());
+        }
+        return pageUrlPrefix + pageNumber;
+    }
+
+    private RequestUrlBuilder getUrlBuilder() {
+        return RequestUrlBuilder.forRequest(((IWebContext) arguments.getContext()).getHttpServletRequest());
+    }
+
+    /**
+     * Returns the page URL with the keyset parameters removed, and the provided one added if not null.
+     */
+    private String getKeysetUrl(String keyParam, String key) {
+        String[] removedParams = {dialect.getAfterParameter(), dialect.getBeforeParameter()};
+        return getUrl(removedParams, keyParam, key);
+    }
+
+    /**
+     * Returns the page URL with some parameters removed, and the provided one replaced or added if not null.
+     */
+    private String getUrl(String[] removedParams, String param, String value) {
+        if (param == null) {
+            return getUrlBuilder().getUrl(removedParams, new String[0], new String[0]);
+        }
+        return getUrlBuilder().getUrl(removedParams, new String[] {param}, new String[] {value});
+    }
+
+    private String getFirstUrl() {
+        return keysetPage != null ? getKeysetUrl(null, null) : getPageUrl(0);
+    }
+
+    private String getPreviousUrl() {
+        if (keysetPage == null) {
+            return getPageUrl(page - 1);
+        } else if (keysetPage.getFirstKey() == null) {
+            return getFirstUrl();
         } else {
-            query += "&" + pageParam + "=" + pageNumber;
+            return getKeysetUrl(dialect.getBeforeParameter(), keysetPage.getFirstKey());
         }
-        return uri + "?" + query;
+    }
+
+    private String getNextUrl() {
+        return keysetPage != null ? getKeysetUrl(dialect.getAfterParameter(), keysetPage.getLastKey()) : getPageUrl(page + 1);
     }
 
     /**
@@ -149,31 +409,99 @@ public class NavigationBarRenderer {
         String text;
         if (!firstPage) {
             // "First" link
-            addLinkToDiv(div, 0, "paginate-first", "First", PagesDialect.I18N_FIRST);
+            addLinkToDiv(div, getFirstUrl(), "paginate-first", "First", PagesDialect.I18N_FIRST);
             // "Previous" link
-            addLinkToDiv(div, page - 1, "paginate-previous", "Previous", PagesDialect.I18N_PREVIOUS);
-        }
-        // "Page N of M" text
-        Element currentPage = new Element("span");
-        currentPage.setAttribute("class", "paginate-page");
-        String[] params = {(page + 1) + "", pageCount + ""};
-        text = getMessageOrDefault(arguments, "Page {0} of {1}", PagesDialect.I18N_PAGE, params);
-        currentPage.addChild(new Text(text));
-        div.addChild(currentPage);
-        div.addChild(new Text(" "));
+            addLinkToDiv(div, getPreviousUrl(), "paginate-previous", "Previous", PagesDialect.I18N_PREVIOUS);
+        }
+        if (countKnown && dialect.getPaginateWindow() > 0) {
+            // "1 ... 4 5 [6] 7 8 ... 20" links
+            addPageNumbersToDiv(div, dialect.getPaginateWindow());
+        } else if (countKnown) {
+            // "Page N of M" text
+            Element currentPage = new Element("span");
+            currentPage.setAttribute("class", "paginate-page");
+            String[] params = {(page + 1) + "", pageCount + ""};
+            text = getMessageOrDefault(arguments, "Page {0} of {1}", PagesDialect.I18N_PAGE, params);
+            currentPage.addChild(new Text(text));
+            div.addChild(currentPage);
+            div.addChild(new Text(" "));
+        }
         if (!lastPage) {
             // "Next" link
-            addLinkToDiv(div, page + 1, "paginate-next", "Next", PagesDialect.I18N_NEXT);
-            // "Last" link
-            addLinkToDiv(div, pageCount - 1, "paginate-last", "Last", PagesDialect.I18N_LAST);
+            addLinkToDiv(div, getNextUrl(), "paginate-next", "Next", PagesDialect.I18N_NEXT);
+            if (countKnown) {
+                // "Last" link
+                addLinkToDiv(div, getPageUrl(pageCount - 1), "paginate-last", "Last", PagesDialect.I18N_LAST);
+            }
         }
-        container.getParent().insertAfter(container, div);
+        insertAfterContainer(div);
+        navigationNode = div;
     }
 
-    private void addLinkToDiv(Element div, int targetPage, String className, String defaultText, String i18nKey) {
+    /**
+     * Adds links to the first page, the pages around the current one and the last page, like:
+     *
+     * <pre>
+     * {@code
+     *    <span class="paginate-pages">
+     *        <a href="...">1</a> <span class="paginate-gap">...</span> <a href="...">5</a>
+     *        <span class="paginate-current">6</span> <a href="...">7</a> <span class="paginate-gap">...</span>
+     *        <a href="...">20</a>
+     *    </span>
+     * }
+     * </pre>
+     */
+    private void addPageNumbersToDiv(Element div, int window) {
+        Element pages = new Element("span");
+        pages.setAttribute("class", "paginate-pages");
+        int from = Math.max(0, page - window);
+        int to = Math.min(pageCount - 1, page + window);
+        if (from > 0) {
+            addPageNumberToSpan(pages, 0);
+            if (from > 1) {
+                addGapToSpan(pages);
+            }
+        }
+        for (int i = from; i <= to; i++) {
+            addPageNumberToSpan(pages, i);
+        }
+        if (to < pageCount - 1) {
+            if (to < pageCount - 2) {
+                addGapToSpan(pages);
+            }
+            addPageNumberToSpan(pages, pageCount - 1);
+        }
+        div.addChild(pages);
+        div.addChild(new Text(" "));
+    }
+
+    private void addPageNumberToSpan(Element span, int targetPage) {
+        Element pageNumber;
+        if (targetPage == page) {
+            pageNumber = new Element("span");
+            pageNumber.setAttribute("class", "paginate-current");
+        } else {
+            pageNumber = new Element("a");
+            pageNumber.setAttribute("class", "paginate-number");
+            pageNumber.setAttribute("href", getPageUrl(targetPage));
+        }
+        pageNumber.addChild(new Text((targetPage + 1) + ""));
+        span.addChild(pageNumber);
+        span.addChild(new Text(" "));
+    }
+
+    private void addGapToSpan(Element span) {
+        Element gap = new Element("span");
+        gap.setAttribute("class", "paginate-gap");
+        gap.addChild(new Text("\u2026"));
+        span.addChild(gap);
+        span.addChild(new Text(" "));
+    }
+
+    private void addLinkToDiv(Element div, String href, String className, String defaultText, String i18nKey) {
         Element link = new Element("a");
         link.setAttribute("class", className);
-        link.setAttribute("href", getPageUrl(targetPage));
+        link.setAttribute("href", href);
         String text = getMessageOrDefault(arguments, defaultText, i18nKey);
         link.addChild(new Text(text));
         div.addChild(link);
@@ -188,12 +516,6 @@ public class NavigationBarRenderer {
         } else {
             messageKey = propertyKey;
         }
-        String message = PagesDialectUtil.templateMessage(arguments, messageKey, params);
-        if (message.startsWith("??" + messageKey)) {
-            MessageFormat formatter = new MessageFormat(defaultMessage);
-            return formatter.format(params);
-        } else {
-            return message;
-        }
+        return dialect.getMessageCache().getMessage(arguments, messageKey, defaultMessage, (Object[]) params);
     }
 }
@@ -0,0 +1,27 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.util.List;
+
+/**
+ * Iteration object for pages:paginate which fetches only the requested page, as in, from a database.
+ * Implement SortablePageSource to let the source sort rows for pages:sort.
+ *
+ * Example usage:
+ * <pre>
+ * {@code
+ *    <div th:each="product : ${productSource}" pages:paginate="20">...</div>
+ * }
+ * </pre>
+ */
+public interface PageSource<T> {
+
+    /**
+     * Returns the total number of rows.
+     */
+    int count();
+
+    /**
+     * Returns up to limit rows starting at offset.
+     */
+    List<T> fetch(int offset, int limit);
+}
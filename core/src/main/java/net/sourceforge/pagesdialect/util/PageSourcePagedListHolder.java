@@ -0,0 +1,102 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * RecoverablePagedListHolder over a PageSource, which only fetches the rows of the current page.
+ *
+ * The total count is read once. Every row is only fetched if the original list is requested, as in, to export it
+ * or to sort it in memory when the source is not a SortablePageSource.
+ */
+public class PageSourcePagedListHolder extends RecoverablePagedListHolder {
+
+    private PageSource source;
+    private List<SortField> sortFields = Collections.emptyList();
+    private boolean materialized = false;
+    private int nrOfElements = -1;
+    private List pageList;
+    private int pageListFirst;
+    private int pageListSize;
+
+    public PageSourcePagedListHolder(PageSource source) {
+        super(Collections.EMPTY_LIST);
+        this.source = source;
+    }
+
+    /**
+     * Returns true if the source can sort rows itself.
+     */
+    public boolean isSortable() {
+        return source instanceof SortablePageSource;
+    }
+
+    /**
+     * Sets the order requested to a SortablePageSource.
+     */
+    public void setSortFields(List<SortField> sortFields) {
+        this.sortFields = sortFields;
+        this.pageList = null;
+    }
+
+    @Override
+    public int getNrOfElements() {
+        if (materialized) {
+            return super.getNrOfElements();
+        }
+        if (nrOfElements < 0) {
+            nrOfElements = source.count();
+        }
+        return nrOfElements;
+    }
+
+    @Override
+    public List getPageList() {
+        if (materialized) {
+            return super.getPageList();
+        }
+        int first = getFirstElementOnPage();
+        if (pageList == null || pageListFirst != first || pageListSize != getPageSize()) {
+            pageList = fetch(first, getPageSize());
+            pageListFirst = first;
+            pageListSize = getPageSize();
+        }
+        return pageList;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return getNrOfElements() == 0;
+    }
+
+    @Override
+    public Iterable getOriginalRows() {
+        if (materialized) {
+            return super.getOriginalRows();
+        }
+        return ChunkedIterable.forPageSource(source, sortFields);
+    }
+
+    @Override
+    public List getOriginalList() {
+        if (!materialized) {
+            setOriginalList(fetch(0, getNrOfElements()));
+        }
+        return super.getOriginalList();
+    }
+
+    @Override
+    public void setOriginalList(List originalList) {
+        super.setOriginalList(originalList);
+        this.materialized = true;
+        this.pageList = null;
+    }
+
+    private List fetch(int offset, int limit) {
+        if (!sortFields.isEmpty()) {
+            return ((SortablePageSource) source).fetch(offset, limit, sortFields);
+        } else {
+            return source.fetch(offset, limit);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.servlet.http.HttpServletRequest;
+import net.sourceforge.pagesdialect.PagesDialect;
+import org.springframework.core.MethodParameter;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+/**
+ * Spring MVC argument resolver which builds a spring-data Pageable from the page and sort request parameters
+ * used by PagesDialect, so pages:paginated lists can be sorted and limited by the database.
+ *
+ * Sort fields are only accepted if they are declared in a {@link SortableFields} annotation on the parameter, or
+ * else in the sortableFields property. Other fields are ignored, and pages:sort headers do not show them as sorted.
+ *
+ * Example configuration:
+ * <pre>
+ * {@code
+ *    <mvc:annotation-driven>
+ *        <mvc:argument-resolvers>
+ *            <bean class="net.sourceforge.pagesdialect.util.PageableArgumentResolver">
+ *                <constructor-arg ref="pagesDialect" />
+ *            </bean>
+ *        </mvc:argument-resolvers>
+ *    </mvc:annotation-driven>
+ * }
+ * </pre>
+ */
+public class PageableArgumentResolver implements HandlerMethodArgumentResolver {
+
+    public static final String SORT_FIELDS_ATTR = "net_sourceforge_pagesdialect_PagesDialect_sortFields";
+
+    private PagesDialect dialect;
+    private int pageSize = 10; // Default value. Can be overriden by config or by pageSize request parameter.
+    private Set<String> sortableFields = Collections.emptySet();
+
+    public PageableArgumentResolver(PagesDialect dialect) {
+        this.dialect = dialect;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Sets the fields accepted for parameters without SortableFields annotation.
+     */
+    public void setSortableFields(Collection<String> sortableFields) {
+        this.sortableFields = new HashSet<String>(sortableFields);
+    }
+
+    public Set<String> getSortableFields() {
+        return sortableFields;
+    }
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return Pageable.class.equals(parameter.getParameterType());
+    }
+
+    @Override
+    public Object resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+            NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        HttpServletRequest request = webRequest.getNativeRequest(HttpServletRequest.class);
+        int page = 0;
+        String pageValue = webRequest.getParameter(dialect.getPageParameter());
+        if (pageValue != null) {
+            try {
+                page = Math.max(0, Integer.parseInt(pageValue));
+            } catch (NumberFormatException ex) {
+                // First page
+            }
+        }
+        Sort sort = getSort(parameter, webRequest, request);
+        int size = PagesDialectUtil.getPageSize(dialect, request, pageSize);
+        return new PageRequest(page, size, sort);
+    }
+
+    /**
+     * Returns the requested sort, or null if there is none or no requested field is sortable. The accepted fields
+     * are stored in a request attribute, so pages:sort headers match the actual sort.
+     */
+    private Sort getSort(MethodParameter parameter, NativeWebRequest webRequest, HttpServletRequest request) {
+        String sortValue = webRequest.getParameter(dialect.getSortParameter());
+        String sortTypeValue = webRequest.getParameter(dialect.getSortTypeParameter());
+        if (sortValue == null || sortTypeValue == null) {
+            return null;
+        }
+        Collection<String> accepted = sortableFields;
+        SortableFields annotation = parameter.getParameterAnnotation(SortableFields.class);
+        if (annotation != null) {
+            accepted = Arrays.asList(annotation.value());
+        }
+        List<SortField> sortFields = new ArrayList<SortField>();
+        List<Sort.Order> orders = new ArrayList<Sort.Order>();
+        for (SortField sortField : SortField.parse(sortValue, sortTypeValue)) {
+            if (accepted.contains(sortField.getField())) {
+                sortFields.add(sortField);
+                Sort.Direction direction = sortField.isDesc() ? Sort.Direction.DESC : Sort.Direction.ASC;
+                orders.add(new Sort.Order(direction, sortField.getField()));
+            }
+        }
+        request.setAttribute(SORT_FIELDS_ATTR, sortFields);
+        return orders.isEmpty() ? null : new Sort(orders);
+    }
+}
@@ -9,12 +9,14 @@ import org.thymeleaf.exceptions.TemplateProcessingException;
 import org.thymeleaf.standard.expression.IStandardExpression;
 import org.thymeleaf.standard.expression.IStandardExpressionParser;
 import org.thymeleaf.standard.expression.StandardExpressions;
-import org.thymeleaf.util.MessageResolutionUtils;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.text.SimpleDateFormat;
+import javax.servlet.FilterRegistration;
+import javax.servlet.http.HttpServletRequest;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -62,91 +64,84 @@ public class PagesDialectUtil {
     }
 
     /**
-     * Return a property from an object via reflection.
-     *
-     * @param propertyPath using dot notation, as in, "product.category.name".
-     * @return null if any field in path is null.
+     * Returns the page size requested in the pageSize parameter, if it is one of the pageSizes property values, or
+     * else the default one. The result is never greater than the maxPageSize property. The request parameter is
+     * ignored if neither pageSizes nor maxPageSize are set.
      */
-    // FIXME: use ONGL or SPeL to get properties
-    public static Object getProperty(Object obj, String propertyPath) {
-        if (obj == null) {
-            return null;
-        }
-        String field, trail = null;
-        int dotPos = propertyPath.indexOf('.');
-        if (dotPos >= 0) {
-            field = propertyPath.substring(0, dotPos);
-            trail = propertyPath.substring(dotPos + 1);
-        } else {
-            field = propertyPath;
+    public static int getPageSize(PagesDialect dialect, HttpServletRequest request, int defaultPageSize) {
+        int pageSize = defaultPageSize;
+        List<Integer> pageSizes = dialect.getPageSizes();
+        int maxPageSize = dialect.getMaxPageSize();
+        String requestedValue = request.getParameter(dialect.getPageSizeParameter());
+        if (requestedValue != null && (!pageSizes.isEmpty() || maxPageSize > 0)) {
+            try {
+                int requested = Integer.parseInt(requestedValue.trim());
+                if (requested > 0 && (pageSizes.isEmpty() || pageSizes.contains(requested))) {
+                    pageSize = requested;
+                }
+            } catch (NumberFormatException ex) {
+                // Keep default page size
+            }
         }
-        Object result = invokeMethod(obj, field);
-        if (trail == null) {
-            return result;
-        } else {
-            return getProperty(result, trail);
+        if (maxPageSize > 0 && pageSize > maxPageSize) {
+            pageSize = maxPageSize;
         }
+        return pageSize;
     }
 
-    private static Object invokeMethod(Object obj, String fieldName) {
+    /**
+     * Encodes a request parameter value as UTF-8.
+     */
+    public static String urlEncode(String value) {
         try {
-            // First try getXXX
-            String methodName = "get" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
-            if (hasMethod(obj.getClass(), methodName)) {
-                return obj.getClass().getMethod(methodName).invoke(obj);
-            }
-            // Then try isXXX
-            methodName = "is" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
-            if (hasMethod(obj.getClass(), methodName)) {
-                return obj.getClass().getMethod(methodName).invoke(obj);
-            }
-            throw new TemplateProcessingException("Field not found for field " + fieldName);
-        } catch (NoSuchMethodException ex) {
-            throw new TemplateProcessingException("Field not found", ex);
-        } catch (IllegalAccessException ex) {
-            throw new TemplateProcessingException("Field not accesible", ex);
-        } catch (InvocationTargetException ex) {
-            throw new TemplateProcessingException("Error while getting field", ex);
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new TemplateProcessingException("UTF-8 not supported", ex);
         }
     }
 
-    private static boolean hasMethod(Class clazz, String methodName) {
-        for (Method method : clazz.getMethods()) {
-            if (method.getName().equals(methodName) && method.getParameterTypes().length == 0) {
-                return true;
-            }
+    /**
+     * Return a property from an object via reflection.
+     *
+     * @param propertyPath using dot notation, as in, "product.category.name".
+     * @return null if any field in path is null.
+     */
+    public static Object getProperty(Object obj, String propertyPath) {
+        if (obj == null) {
+            return null;
         }
-        return false;
+        return PropertyAccessor.forPath(obj.getClass(), propertyPath).getValue(obj);
     }
 
     /**
      * Return a property class from an object via reflection.
      *
      * @param propertyPath using dot notation, as in, "product.category.name".
-     * @return null if any field in path is null.
      */
-    // FIXME: use ONGL or SPeL to get properties
-    // FIXME: remove duplicated code with previous method
     public static Class getPropertyClass(Class parentClass, String propertyPath) {
-        String field, trail = null;
-        int dotPos = propertyPath.indexOf('.');
-        if (dotPos >= 0) {
-            field = propertyPath.substring(0, dotPos);
-            trail = propertyPath.substring(dotPos + 1);
-        } else {
-            field = propertyPath;
-        }
-        String methodName = "get" + Character.toUpperCase(field.charAt(0)) + field.substring(1);
-        try {
-            Method method = parentClass.getMethod(methodName);
-            if (trail == null) {
-                return method.getReturnType();
-            } else {
-                return getPropertyClass(method.getReturnType(), trail);
+        return PropertyAccessor.forPath(parentClass, propertyPath).getPropertyClass();
+    }
+
+    /**
+     * Get export parameter name from ExportFilter configuration.
+     *
+     * @return null if ExportFilter is not registered.
+     */
+    public static String getExportParameter(HttpServletRequest request) {
+        for (FilterRegistration filterRegistration : request.getServletContext().getFilterRegistrations().values()) {
+            if (filterRegistration.getClassName().equals(ExportFilter.class.getName())) {
+                return filterRegistration.getInitParameter(ExportFilter.EXPORT_INIT_PARAMETER);
             }
-        } catch (NoSuchMethodException ex) {
-            throw new TemplateProcessingException("Field not found", ex);
         }
+        return null;
+    }
+
+    /**
+     * Return true if the request is being processed to serve an export file.
+     */
+    public static boolean isExportRequest(HttpServletRequest request) {
+        String exportParam = getExportParameter(request);
+        return exportParam != null && request.getParameter(exportParam) != null;
     }
 
     /**
@@ -198,19 +193,4 @@ public class PagesDialectUtil {
                 || expression.startsWith("@{") && expression.endsWith("}")
                 || expression.startsWith("#{") && expression.endsWith("}");
     }
-
-    public static String templateMessage(Arguments arguments, String messageKey, String... params) {
-        String templateMessage = MessageResolutionUtils.resolveMessageForTemplate(arguments, messageKey, params, false);
-        if (templateMessage != null) {
-            return templateMessage;
-        }
-        String processorMessage = MessageResolutionUtils.resolveMessageForClass(
-                arguments.getConfiguration(), PagesDialect.class,
-                arguments.getContext().getLocale(), messageKey, params, false);
-        if (processorMessage != null) {
-            return processorMessage;
-        }
-        return MessageResolutionUtils.getAbsentMessageRepresentation(
-                messageKey, arguments.getContext().getLocale());
-    }
 }
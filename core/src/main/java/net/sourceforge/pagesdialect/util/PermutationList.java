@@ -0,0 +1,38 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read-only List view which shows the rows of a source list in the order given by a permutation of row
+ * positions. The source list is never modified, so it can be shared among concurrent requests.
+ */
+public class PermutationList extends AbstractList implements RandomAccess {
+
+    private List source;
+    private int[] order;
+
+    /**
+     * @param source rows to show. Lists without random access are copied once to an array.
+     * @param order row positions, so the row at position i is source.get(order[i]).
+     */
+    public PermutationList(List source, int[] order) {
+        if (source.size() != order.length) {
+            throw new IllegalArgumentException("Permutation size does not match list size");
+        }
+        this.source = source instanceof RandomAccess ? source : Arrays.asList(source.toArray());
+        this.order = order;
+    }
+
+    @Override
+    public Object get(int index) {
+        return source.get(order[index]);
+    }
+
+    @Override
+    public int size() {
+        return order.length;
+    }
+}
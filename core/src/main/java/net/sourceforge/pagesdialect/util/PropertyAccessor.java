@@ -0,0 +1,132 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+
+/**
+ * Getter chain for a property path in dot notation, as in, "category.name".
+ *
+ * Accessors are resolved once per (class, property path) and cached, so the getter lookup is not repeated on
+ * every access. Nested properties are resolved against the runtime class of each intermediate value.
+ */
+public final class PropertyAccessor {
+
+    private static final ConcurrentMap<Class, ConcurrentMap<String, PropertyAccessor>> CACHE =
+            new ConcurrentHashMap<Class, ConcurrentMap<String, PropertyAccessor>>();
+
+    private final Class ownerClass;
+    private final Method getter;
+    private final String trail;
+
+    // Accessor for the trail, resolved against the last intermediate class seen.
+    private volatile PropertyAccessor next;
+
+    private PropertyAccessor(Class ownerClass, Method getter, String trail) {
+        this.ownerClass = ownerClass;
+        this.getter = getter;
+        this.trail = trail;
+    }
+
+    /**
+     * Return the cached accessor for a property path of a class, resolving it if needed.
+     *
+     * @param propertyPath using dot notation, as in, "product.category.name".
+     */
+    public static PropertyAccessor forPath(Class ownerClass, String propertyPath) {
+        ConcurrentMap<String, PropertyAccessor> accessors = CACHE.get(ownerClass);
+        if (accessors == null) {
+            accessors = new ConcurrentHashMap<String, PropertyAccessor>();
+            ConcurrentMap<String, PropertyAccessor> previous = CACHE.putIfAbsent(ownerClass, accessors);
+            if (previous != null) {
+                accessors = previous;
+            }
+        }
+        PropertyAccessor accessor = accessors.get(propertyPath);
+        if (accessor == null) {
+            accessor = resolve(ownerClass, propertyPath);
+            accessors.put(propertyPath, accessor);
+        }
+        return accessor;
+    }
+
+    private static PropertyAccessor resolve(Class ownerClass, String propertyPath) {
+        String field, trail = null;
+        int dotPos = propertyPath.indexOf('.');
+        if (dotPos >= 0) {
+            field = propertyPath.substring(0, dotPos);
+            trail = propertyPath.substring(dotPos + 1);
+        } else {
+            field = propertyPath;
+        }
+        Method getter = findGetter(ownerClass, field);
+        try {
+            getter.setAccessible(true); // Skip access checks on every invocation
+        } catch (SecurityException ex) {
+            // Keep access checks
+        }
+        return new PropertyAccessor(ownerClass, getter, trail);
+    }
+
+    private static Method findGetter(Class ownerClass, String fieldName) {
+        String suffix = Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+        // First try getXXX, then try isXXX
+        try {
+            return ownerClass.getMethod("get" + suffix);
+        } catch (NoSuchMethodException ex) {
+            try {
+                return ownerClass.getMethod("is" + suffix);
+            } catch (NoSuchMethodException ex2) {
+                throw new TemplateProcessingException("Field not found for field " + fieldName, ex2);
+            }
+        }
+    }
+
+    /**
+     * Return the property value of an object of the owner class.
+     *
+     * @return null if any field in path is null.
+     */
+    public Object getValue(Object obj) {
+        if (obj == null) {
+            return null;
+        }
+        Object result = invoke(obj);
+        if (trail == null || result == null) {
+            return result;
+        }
+        PropertyAccessor nextAccessor = next;
+        if (nextAccessor == null || nextAccessor.ownerClass != result.getClass()) {
+            nextAccessor = forPath(result.getClass(), trail);
+            next = nextAccessor;
+        }
+        return nextAccessor.getValue(result);
+    }
+
+    /**
+     * Return the declared class of the property, following getter return types.
+     */
+    public Class getPropertyClass() {
+        if (trail == null) {
+            return getter.getReturnType();
+        } else {
+            return forPath(getter.getReturnType(), trail).getPropertyClass();
+        }
+    }
+
+    public Class getOwnerClass() {
+        return ownerClass;
+    }
+
+    private Object invoke(Object obj) {
+        try {
+            return getter.invoke(obj);
+        } catch (IllegalAccessException ex) {
+            throw new TemplateProcessingException("Field not accesible", ex);
+        } catch (InvocationTargetException ex) {
+            throw new TemplateProcessingException("Error while getting field", ex);
+        }
+    }
+}
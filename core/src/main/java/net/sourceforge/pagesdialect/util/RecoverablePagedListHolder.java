@@ -18,4 +18,27 @@ public class RecoverablePagedListHolder extends PagedListHolder {
     public List getOriginalList() {
         return originalList;
     }
+
+    /**
+     * Returns the original elements to be read once, as in, to stream an export. Unlike getOriginalList, lazy
+     * holders do not copy them to a List.
+     */
+    public Iterable getOriginalRows() {
+        return getOriginalList();
+    }
+
+    /**
+     * Returns true if there are no elements, without reading them.
+     */
+    public boolean isEmpty() {
+        return originalList.isEmpty();
+    }
+
+    /**
+     * Replaces the list, as in, with a sorted view of the original one.
+     */
+    public void setOriginalList(List originalList) {
+        setSource(originalList);
+        this.originalList = originalList;
+    }
 }
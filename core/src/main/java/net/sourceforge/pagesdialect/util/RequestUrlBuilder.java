@@ -0,0 +1,118 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+
+/**
+ * Builds links to the current request URL with some parameters replaced. The query string is parsed once per
+ * request and shared by page, sort and export links. Parameters are matched by full name, so "page" does not
+ * match "subpage".
+ */
+public class RequestUrlBuilder {
+
+    public static final String URL_BUILDER_ATTR = "net_sourceforge_pagesdialect_PagesDialect_urlBuilder";
+
+    private static final String[] NONE = new String[0];
+
+    private String requestUrl;
+    private List<String> names = new ArrayList<String>();
+    private List<String> parts = new ArrayList<String>();
+
+    private RequestUrlBuilder(HttpServletRequest request) {
+        this.requestUrl = request.getRequestURL().toString();
+        String query = request.getQueryString();
+        if (query != null) {
+            for (String part : query.split("&")) {
+                if (part.length() > 0) {
+                    int equalsPos = part.indexOf('=');
+                    names.add(decode(equalsPos >= 0 ? part.substring(0, equalsPos) : part));
+                    parts.add(part);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the builder of the request, parsing its query string on first use.
+     */
+    public static RequestUrlBuilder forRequest(HttpServletRequest request) {
+        RequestUrlBuilder urlBuilder = (RequestUrlBuilder) request.getAttribute(URL_BUILDER_ATTR);
+        if (urlBuilder == null) {
+            urlBuilder = new RequestUrlBuilder(request);
+            request.setAttribute(URL_BUILDER_ATTR, urlBuilder);
+        }
+        return urlBuilder;
+    }
+
+    /**
+     * Returns the request URL with a parameter replaced, or removed if value is null.
+     */
+    public String getUrl(String param, String value) {
+        return getUrl(NONE, new String[] {param}, new String[] {value});
+    }
+
+    /**
+     * Returns the request URL with some parameters removed and some others replaced.
+     * @param addedValues parameter values, not encoded. Null values are not added.
+     */
+    public String getUrl(String[] removedParams, String[] addedParams, String[] addedValues) {
+        StringBuilder url = appendQuery(removedParams, addedParams);
+        for (int i = 0; i < addedParams.length; i++) {
+            if (addedValues[i] != null) {
+                appendSeparator(url).append(addedParams[i]).append('=').append(PagesDialectUtil.urlEncode(addedValues[i]));
+            }
+        }
+        return url.toString();
+    }
+
+    /**
+     * Returns the request URL with some parameters removed and a parameter without value at the end, as in,
+     * "http://host/list?sort=name&page=", so callers only append the value.
+     */
+    public String getUrlPrefix(String[] removedParams, String param) {
+        StringBuilder url = appendQuery(removedParams, new String[] {param});
+        return appendSeparator(url).append(param).append('=').toString();
+    }
+
+    /**
+     * Writes the request URL and the parameters which are not removed nor replaced.
+     */
+    private StringBuilder appendQuery(String[] removedParams, String[] replacedParams) {
+        StringBuilder url = new StringBuilder(requestUrl.length() + 64);
+        url.append(requestUrl);
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i);
+            if (!contains(removedParams, name) && !contains(replacedParams, name)) {
+                appendSeparator(url).append(parts.get(i));
+            }
+        }
+        return url;
+    }
+
+    private StringBuilder appendSeparator(StringBuilder url) {
+        return url.append(url.length() > requestUrl.length() ? '&' : '?');
+    }
+
+    private static boolean contains(String[] params, String name) {
+        for (String param : params) {
+            if (param.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new TemplateProcessingException("UTF-8 not supported", ex);
+        } catch (IllegalArgumentException ex) {
+            return value; // Malformed escape, compare as is
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package net.sourceforge.pagesdialect.util;
+
+/**
+ * Compares two rows of a list by their position, usually looking up sort keys extracted beforehand.
+ */
+public interface RowComparator {
+
+    int compare(int rowA, int rowB);
+}
@@ -0,0 +1,191 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of sorted row positions shared among requests, so paging through a sorted list does not sort it
+ * again on every page.
+ *
+ * Entries are keyed by the list identity, or by a version token supplied by the application, plus the sort
+ * specification and locale. A list modified in place without changing its version token keeps returning the
+ * cached order until the entry expires, so lists should be replaced instead of modified.
+ */
+public class SortCache {
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Map<Object, CachedOrder> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxSize maximum number of cached orders.
+     * @param ttlMillis time to live of each order in milliseconds, or 0 to never expire.
+     */
+    public SortCache(final int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<Object, CachedOrder>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, CachedOrder> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Builds a cache key.
+     *
+     * @param list list to sort, compared by identity if there is no version token.
+     * @param version version token of the list, or null.
+     * @param iterationName name of the iteration, to tell apart lists sharing a version token.
+     * @param sortFields sort specification.
+     * @param locale locale used to compare texts.
+     */
+    public static Object createKey(List list, Object version, String iterationName, List<SortField> sortFields, Locale locale) {
+        StringBuilder sb = new StringBuilder(iterationName).append('|');
+        sb.append(SortField.toSortValue(sortFields)).append('|');
+        sb.append(SortField.toSortTypeValue(sortFields)).append('|');
+        sb.append(locale);
+        return new Key(version == null ? new WeakReference<List>(list) : null, version, list.size(), sb.toString());
+    }
+
+    /**
+     * Returns the cached order of a list, or null if not found, expired or not sorted up to the needed rows.
+     *
+     * @param sortedRows number of leading rows which must be sorted.
+     * @param size list size.
+     */
+    public int[] get(Object key, int sortedRows, int size) {
+        CachedOrder cachedOrder;
+        synchronized (entries) {
+            cachedOrder = entries.get(key);
+            if (cachedOrder == null) {
+                purgeCollected();
+            }
+            if (cachedOrder != null && ttlMillis > 0 && System.currentTimeMillis() - cachedOrder.created > ttlMillis) {
+                entries.remove(key);
+                cachedOrder = null;
+            }
+        }
+        if (cachedOrder == null || cachedOrder.sortedRows < sortedRows || cachedOrder.order.length != size) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return cachedOrder.order;
+    }
+
+    /**
+     * Stores a sorted order. The array must not be modified afterwards.
+     *
+     * @param sortedRows number of leading rows which are sorted.
+     */
+    public void put(Object key, int[] order, int sortedRows) {
+        synchronized (entries) {
+            purgeCollected();
+            entries.put(key, new CachedOrder(order, sortedRows, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Removes the entries of lists already garbage collected, which can never match again. Must hold the lock.
+     */
+    private void purgeCollected() {
+        for (Iterator<Object> it = entries.keySet().iterator(); it.hasNext();) {
+            if (((Key) it.next()).isCollected()) {
+                it.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private static class CachedOrder {
+
+        private final int[] order;
+        private final int sortedRows;
+        private final long created;
+
+        CachedOrder(int[] order, int sortedRows, long created) {
+            this.order = order;
+            this.sortedRows = sortedRows;
+            this.created = created;
+        }
+    }
+
+    /**
+     * Cache key. Lists without version token are held weakly and compared by identity.
+     */
+    private static class Key {
+
+        private final WeakReference<List> listReference;
+        private final Object version;
+        private final int size;
+        private final String sort;
+        private final int hash;
+
+        Key(WeakReference<List> listReference, Object version, int size, String sort) {
+            this.listReference = listReference;
+            this.version = version;
+            this.size = size;
+            this.sort = sort;
+            int identity = listReference != null ? System.identityHashCode(listReference.get()) : version.hashCode();
+            this.hash = 31 * (31 * identity + size) + sort.hashCode();
+        }
+
+        boolean isCollected() {
+            return listReference != null && listReference.get() == null;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            if (hash != other.hash || size != other.size || !sort.equals(other.sort)) {
+                return false;
+            }
+            if (listReference != null) {
+                List list = listReference.get();
+                return other.listReference != null && list != null && list == other.listReference.get();
+            } else {
+                return version.equals(other.version);
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
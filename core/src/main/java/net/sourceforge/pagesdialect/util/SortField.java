@@ -0,0 +1,89 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A field of a sort specification and its direction.
+ */
+public class SortField {
+
+    private String field;
+    private boolean desc;
+
+    public SortField(String field, boolean desc) {
+        this.field = field;
+        this.desc = desc;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public boolean isDesc() {
+        return desc;
+    }
+
+    /**
+     * Parses a sort specification from request parameter values, as in, sort=category.name,price and
+     * sortType=asc,desc. Missing sort types are ascending.
+     *
+     * @return empty list if there is no sort field.
+     */
+    public static List<SortField> parse(String sortValue, String sortTypeValue) {
+        List<SortField> sortFields = new ArrayList<SortField>();
+        if (sortValue == null) {
+            return sortFields;
+        }
+        String[] fields = sortValue.split(",");
+        String[] sortTypes = sortTypeValue != null ? sortTypeValue.split(",") : new String[0];
+        for (int i = 0; i < fields.length; i++) {
+            String field = fields[i].trim();
+            if (field.length() > 0 && indexOf(sortFields, field) < 0) {
+                boolean desc = i < sortTypes.length && "desc".equals(sortTypes[i].trim());
+                sortFields.add(new SortField(field, desc));
+            }
+        }
+        return sortFields;
+    }
+
+    /**
+     * Returns the position of a field in a sort specification, or -1 if not present.
+     */
+    public static int indexOf(List<SortField> sortFields, String field) {
+        for (int i = 0; i < sortFields.size(); i++) {
+            if (sortFields.get(i).getField().equals(field)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the sort parameter value for a sort specification, as in, "category.name,price".
+     */
+    public static String toSortValue(List<SortField> sortFields) {
+        StringBuilder sb = new StringBuilder();
+        for (SortField sortField : sortFields) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(sortField.getField());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the sort type parameter value for a sort specification, as in, "asc,desc".
+     */
+    public static String toSortTypeValue(List<SortField> sortFields) {
+        StringBuilder sb = new StringBuilder();
+        for (SortField sortField : sortFields) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(sortField.isDesc() ? "desc" : "asc");
+        }
+        return sb.toString();
+    }
+}
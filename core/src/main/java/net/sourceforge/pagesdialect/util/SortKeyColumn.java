@@ -0,0 +1,131 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.math.BigDecimal;
+import java.util.BitSet;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+
+/**
+ * Sort keys of a single field for every row, compared by row position. Null values go first in ascending order.
+ *
+ * Numeric and date keys are stored in primitive arrays, so comparisons do not unbox nor dereference values.
+ */
+public abstract class SortKeyColumn implements RowComparator {
+
+    private final BitSet nulls;
+    private final int sign;
+
+    protected SortKeyColumn(BitSet nulls, boolean desc) {
+        this.nulls = nulls;
+        this.sign = desc ? -1 : 1;
+    }
+
+    @Override
+    public int compare(int rowA, int rowB) {
+        boolean nullA = nulls.get(rowA);
+        boolean nullB = nulls.get(rowB);
+        if (nullA || nullB) {
+            if (nullA == nullB) {
+                return 0; // null == null required by Comparator contract
+            }
+            return nullA ? -sign : sign; // nulls at beggining
+        }
+        return sign * compareKeys(rowA, rowB);
+    }
+
+    /**
+     * Compares the non null keys of two rows in ascending order.
+     */
+    protected abstract int compareKeys(int rowA, int rowB);
+
+    /**
+     * Keys of Integer, Short and Byte fields.
+     */
+    public static class IntColumn extends SortKeyColumn {
+
+        private final int[] keys;
+
+        public IntColumn(int[] keys, BitSet nulls, boolean desc) {
+            super(nulls, desc);
+            this.keys = keys;
+        }
+
+        @Override
+        protected int compareKeys(int rowA, int rowB) {
+            int a = keys[rowA];
+            int b = keys[rowB];
+            return a < b ? -1 : (a == b ? 0 : 1);
+        }
+    }
+
+    /**
+     * Keys of Long and Date fields. Dates are stored as milliseconds.
+     */
+    public static class LongColumn extends SortKeyColumn {
+
+        private final long[] keys;
+
+        public LongColumn(long[] keys, BitSet nulls, boolean desc) {
+            super(nulls, desc);
+            this.keys = keys;
+        }
+
+        @Override
+        protected int compareKeys(int rowA, int rowB) {
+            long a = keys[rowA];
+            long b = keys[rowB];
+            return a < b ? -1 : (a == b ? 0 : 1);
+        }
+    }
+
+    /**
+     * Keys of Double, Float and BigDecimal fields. BigDecimal values which convert to the same double are
+     * compared again using the original values.
+     */
+    public static class DoubleColumn extends SortKeyColumn {
+
+        private final double[] keys;
+        private final BigDecimal[] decimals;
+
+        /**
+         * @param decimals original values, or null if keys are exact.
+         */
+        public DoubleColumn(double[] keys, BigDecimal[] decimals, BitSet nulls, boolean desc) {
+            super(nulls, desc);
+            this.keys = keys;
+            this.decimals = decimals;
+        }
+
+        @Override
+        protected int compareKeys(int rowA, int rowB) {
+            int result = Double.compare(keys[rowA], keys[rowB]);
+            if (result == 0 && decimals != null) {
+                result = decimals[rowA].compareTo(decimals[rowB]);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Keys of any other Comparable field, as in, CollationKey for Strings.
+     */
+    public static class ObjectColumn extends SortKeyColumn {
+
+        private final Object[] keys;
+
+        public ObjectColumn(Object[] keys, BitSet nulls, boolean desc) {
+            super(nulls, desc);
+            this.keys = keys;
+        }
+
+        @Override
+        protected int compareKeys(int rowA, int rowB) {
+            Object propertyA = keys[rowA];
+            Object propertyB = keys[rowB];
+            if (propertyA instanceof Comparable && propertyB instanceof Comparable) {
+                return ((Comparable) propertyA).compareTo(propertyB);
+            } else {
+                throw new TemplateProcessingException("Field does not implement Comparable");
+            }
+        }
+    }
+}
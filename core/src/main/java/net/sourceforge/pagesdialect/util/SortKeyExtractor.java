@@ -0,0 +1,181 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.math.BigDecimal;
+import java.text.Collator;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import net.sf.dynamicreports.report.definition.expression.DRIValueFormatter;
+
+/**
+ * Extracts the sort key of every row of a list.
+ *
+ * Integer, Long, Double, BigDecimal and Date fields, as detected from the property class, are extracted into
+ * primitive key arrays. Strings, and values which are not Comparable but have a TypeFormatter, are turned into
+ * locale aware CollationKey objects, so later comparisons are plain binary comparisons. A single Collator and a
+ * single formatter per TypeFormatter are used for the whole extraction.
+ */
+public class SortKeyExtractor {
+
+    private enum KeyType { INT, LONG, DOUBLE, DECIMAL, DATE, OBJECT }
+
+    private TypeFormatterRegistry typeFormatters;
+    private HttpServletRequest request;
+    private Collator collator;
+    private Map<TypeFormatter, DRIValueFormatter> valueFormatters = new HashMap<TypeFormatter, DRIValueFormatter>();
+
+    public SortKeyExtractor(Locale locale, TypeFormatterRegistry typeFormatters, HttpServletRequest request) {
+        this.typeFormatters = typeFormatters;
+        this.request = request;
+        this.collator = Collator.getInstance(locale);
+    }
+
+    /**
+     * Returns the sort keys of provided field for every row of the list.
+     */
+    public SortKeyColumn extract(List list, SortField sortField) {
+        KeyType keyType = getKeyType(list, sortField.getField());
+        SortKeyColumn column = null;
+        if (keyType != KeyType.OBJECT) {
+            column = extractPrimitive(list, sortField, keyType);
+        }
+        if (column == null) {
+            column = extractObject(list, sortField);
+        }
+        return column;
+    }
+
+    /**
+     * Detects the key type from the property class of the first row.
+     */
+    private KeyType getKeyType(List list, String field) {
+        for (Object row : list) {
+            if (row != null) {
+                Class propertyClass = PagesDialectUtil.getPropertyClass(row.getClass(), field);
+                if (propertyClass == Integer.class || propertyClass == Integer.TYPE
+                        || propertyClass == Short.class || propertyClass == Short.TYPE
+                        || propertyClass == Byte.class || propertyClass == Byte.TYPE) {
+                    return KeyType.INT;
+                } else if (propertyClass == Long.class || propertyClass == Long.TYPE) {
+                    return KeyType.LONG;
+                } else if (propertyClass == Double.class || propertyClass == Double.TYPE
+                        || propertyClass == Float.class || propertyClass == Float.TYPE) {
+                    return KeyType.DOUBLE;
+                } else if (propertyClass == BigDecimal.class) {
+                    return KeyType.DECIMAL;
+                } else if (propertyClass == Date.class || propertyClass == java.sql.Date.class) {
+                    return KeyType.DATE;
+                }
+                return KeyType.OBJECT;
+            }
+        }
+        return KeyType.OBJECT;
+    }
+
+    /**
+     * Extracts keys into a primitive array.
+     *
+     * @return null if a value does not match the key type, as in, a Timestamp in a Date field.
+     */
+    private SortKeyColumn extractPrimitive(List list, SortField sortField, KeyType keyType) {
+        int size = list.size();
+        BitSet nulls = new BitSet(size);
+        int[] ints = keyType == KeyType.INT ? new int[size] : null;
+        long[] longs = keyType == KeyType.LONG || keyType == KeyType.DATE ? new long[size] : null;
+        double[] doubles = keyType == KeyType.DOUBLE || keyType == KeyType.DECIMAL ? new double[size] : null;
+        BigDecimal[] decimals = keyType == KeyType.DECIMAL ? new BigDecimal[size] : null;
+        RowReader reader = new RowReader(sortField.getField());
+        int i = 0;
+        for (Object row : list) {
+            Object value = reader.getValue(row);
+            if (value == null) {
+                nulls.set(i);
+            } else if (ints != null && (value instanceof Integer || value instanceof Short || value instanceof Byte)) {
+                ints[i] = ((Number) value).intValue();
+            } else if (keyType == KeyType.LONG && value instanceof Long) {
+                longs[i] = ((Long) value).longValue();
+            } else if (keyType == KeyType.DATE && (value.getClass() == Date.class || value.getClass() == java.sql.Date.class)) {
+                longs[i] = ((Date) value).getTime();
+            } else if (keyType == KeyType.DOUBLE && (value instanceof Double || value instanceof Float)) {
+                doubles[i] = ((Number) value).doubleValue();
+            } else if (keyType == KeyType.DECIMAL && value instanceof BigDecimal) {
+                doubles[i] = ((BigDecimal) value).doubleValue();
+                decimals[i] = (BigDecimal) value;
+            } else {
+                return null;
+            }
+            i++;
+        }
+        if (ints != null) {
+            return new SortKeyColumn.IntColumn(ints, nulls, sortField.isDesc());
+        } else if (longs != null) {
+            return new SortKeyColumn.LongColumn(longs, nulls, sortField.isDesc());
+        } else {
+            return new SortKeyColumn.DoubleColumn(doubles, decimals, nulls, sortField.isDesc());
+        }
+    }
+
+    private SortKeyColumn extractObject(List list, SortField sortField) {
+        Object[] keys = new Object[list.size()];
+        BitSet nulls = new BitSet(keys.length);
+        RowReader reader = new RowReader(sortField.getField());
+        int i = 0;
+        for (Object row : list) {
+            keys[i] = toSortKey(reader.getValue(row));
+            if (keys[i] == null) {
+                nulls.set(i);
+            }
+            i++;
+        }
+        return new SortKeyColumn.ObjectColumn(keys, nulls, sortField.isDesc());
+    }
+
+    /**
+     * Returns a Comparable key for the value, or the value itself if no key can be built.
+     */
+    private Object toSortKey(Object value) {
+        if (value instanceof String) {
+            return collator.getCollationKey((String) value);
+        } else if (value == null || value instanceof Comparable) {
+            return value;
+        }
+        // Try to sort after formatting
+        TypeFormatter typeFormatter = typeFormatters.getTypeFormatterForObject(value);
+        if (typeFormatter == null) {
+            return value;
+        }
+        DRIValueFormatter valueFormatter = valueFormatters.get(typeFormatter);
+        if (valueFormatter == null) {
+            valueFormatter = typeFormatter.getDRIValueFormatter(request);
+            valueFormatters.put(typeFormatter, valueFormatter);
+        }
+        return collator.getCollationKey(valueFormatter.format(value, null).toString());
+    }
+
+    /**
+     * Reads a field from rows, reusing the accessor while rows have the same class.
+     */
+    private static class RowReader {
+
+        private String field;
+        private PropertyAccessor accessor;
+
+        RowReader(String field) {
+            this.field = field;
+        }
+
+        Object getValue(Object row) {
+            if (row == null) {
+                return null;
+            }
+            if (accessor == null || accessor.getOwnerClass() != row.getClass()) {
+                accessor = PropertyAccessor.forPath(row.getClass(), field);
+            }
+            return accessor.getValue(row);
+        }
+    }
+}
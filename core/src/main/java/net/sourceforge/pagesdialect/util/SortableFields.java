@@ -0,0 +1,23 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the fields a Pageable controller parameter can be sorted by, as used in pages:sort attributes.
+ *
+ * Example usage:
+ * <pre>
+ * {@code
+ *    public String list(@SortableFields({"name", "category.name"}) Pageable pageable, Model model)
+ * }
+ * </pre>
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SortableFields {
+
+    String[] value();
+}
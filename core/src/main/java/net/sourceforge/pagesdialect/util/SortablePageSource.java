@@ -0,0 +1,14 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.util.List;
+
+/**
+ * PageSource which sorts rows itself, so pages:sort does not need to read every row.
+ */
+public interface SortablePageSource<T> extends PageSource<T> {
+
+    /**
+     * Returns up to limit rows starting at offset, in the order given by the sort fields.
+     */
+    List<T> fetch(int offset, int limit, List<SortField> sortFields);
+}
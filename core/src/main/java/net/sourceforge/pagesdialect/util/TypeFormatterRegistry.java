@@ -0,0 +1,58 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resolves the TypeFormatter for a value class, caching the result per class. The first formatter whose value
+ * class is the class itself, a superclass or an implemented interface is used. Classes without formatter are also
+ * cached.
+ */
+public class TypeFormatterRegistry {
+
+    private static final Object NOT_FOUND = new Object();
+
+    private final List<TypeFormatter> typeFormatters;
+    private final ConcurrentMap<Class, Object> resolved = new ConcurrentHashMap<Class, Object>();
+
+    /**
+     * @param typeFormatters formatters in lookup order, or null if there is none.
+     */
+    public TypeFormatterRegistry(Collection<TypeFormatter> typeFormatters) {
+        this.typeFormatters = new ArrayList<TypeFormatter>();
+        if (typeFormatters != null) {
+            this.typeFormatters.addAll(typeFormatters);
+        }
+    }
+
+    /**
+     * Returns the formatter for provided class, or null if not found.
+     */
+    public TypeFormatter getTypeFormatter(Class valueClass) {
+        if (valueClass == null || typeFormatters.isEmpty()) {
+            return null;
+        }
+        Object typeFormatter = resolved.get(valueClass);
+        if (typeFormatter == null) {
+            typeFormatter = NOT_FOUND;
+            for (TypeFormatter candidate : typeFormatters) {
+                if (candidate.getValueClass().isAssignableFrom(valueClass)) {
+                    typeFormatter = candidate;
+                    break;
+                }
+            }
+            resolved.put(valueClass, typeFormatter);
+        }
+        return typeFormatter != NOT_FOUND ? (TypeFormatter) typeFormatter : null;
+    }
+
+    /**
+     * Returns the formatter for the class of provided value, or null if not found.
+     */
+    public TypeFormatter getTypeFormatterForObject(Object value) {
+        return value != null ? getTypeFormatter(value.getClass()) : null;
+    }
+}
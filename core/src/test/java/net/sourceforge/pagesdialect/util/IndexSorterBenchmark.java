@@ -0,0 +1,53 @@
+package net.sourceforge.pagesdialect.util;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Compares sequential and parallel sort times for several list sizes, as used to choose the default
+ * parallelSortThreshold. Run with: java IndexSorterBenchmark [threads].
+ */
+public class IndexSorterBenchmark {
+
+    private static final int[] SIZES = {5000, 10000, 20000, 50000, 100000, 300000};
+    private static final int RUNS = 15;
+
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Collator collator = Collator.getInstance(Locale.ENGLISH);
+        try {
+            for (int size : SIZES) {
+                Random random = new Random(size);
+                final CollationKey[] keys = new CollationKey[size];
+                for (int i = 0; i < size; i++) {
+                    keys[i] = collator.getCollationKey("name " + random.nextInt(size));
+                }
+                RowComparator comparator = new RowComparator() {
+                    @Override
+                    public int compare(int rowA, int rowB) {
+                        return keys[rowA].compareTo(keys[rowB]);
+                    }
+                };
+                long sequential = Long.MAX_VALUE;
+                long parallel = Long.MAX_VALUE;
+                for (int run = 0; run < RUNS; run++) {
+                    long start = System.nanoTime();
+                    IndexSorter.sort(size, comparator);
+                    sequential = Math.min(sequential, System.nanoTime() - start);
+                    start = System.nanoTime();
+                    IndexSorter.parallelSort(size, comparator, executor, threads);
+                    parallel = Math.min(parallel, System.nanoTime() - start);
+                }
+                System.out.printf("%7d rows: sequential %8.2f ms, parallel %8.2f ms, speedup %.2f%n",
+                        size, sequential / 1e6, parallel / 1e6, (double) sequential / parallel);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
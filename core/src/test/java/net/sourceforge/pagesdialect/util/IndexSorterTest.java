@@ -0,0 +1,90 @@
+package net.sourceforge.pagesdialect.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the parallel sort returns the same permutation as the sequential one, including the order of equal keys.
+ */
+public class IndexSorterTest {
+
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void createExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void shutdownExecutor() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void parallelSortMatchesSequentialSort() {
+        for (int size : new int[] {0, 1, 6, 7, 13, 100, 1001, 20000, 100003}) {
+            // Few distinct keys, so most rows have equal keys
+            RowComparator comparator = keyComparator(randomKeys(size, 50));
+            int[] expected = IndexSorter.sort(size, comparator);
+            assertSortedAndStable(expected, comparator);
+            for (int parallelism : new int[] {2, 3, 4, 7, 8}) {
+                assertArrayEquals("size " + size + ", parallelism " + parallelism,
+                        expected, IndexSorter.parallelSort(size, comparator, executor, parallelism));
+            }
+        }
+    }
+
+    @Test
+    public void parallelSortKeepsOriginalOrderOfEqualKeys() {
+        int size = 50000;
+        int[] order = IndexSorter.parallelSort(size, keyComparator(new int[size]), executor, 4);
+        for (int i = 0; i < size; i++) {
+            assertTrue(order[i] == i);
+        }
+    }
+
+    @Test
+    public void parallelSortReversesDescendingKeys() {
+        int size = 30000;
+        int[] keys = new int[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = size - i;
+        }
+        int[] order = IndexSorter.parallelSort(size, keyComparator(keys), executor, 3);
+        for (int i = 0; i < size; i++) {
+            assertTrue(order[i] == size - 1 - i);
+        }
+    }
+
+    private static void assertSortedAndStable(int[] order, RowComparator comparator) {
+        for (int i = 1; i < order.length; i++) {
+            int result = comparator.compare(order[i - 1], order[i]);
+            assertTrue(result < 0 || result == 0 && order[i - 1] < order[i]);
+        }
+    }
+
+    private static int[] randomKeys(int size, int distinct) {
+        Random random = new Random(size); // Same keys on every run
+        int[] keys = new int[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = random.nextInt(distinct);
+        }
+        return keys;
+    }
+
+    private static RowComparator keyComparator(final int[] keys) {
+        return new RowComparator() {
+            @Override
+            public int compare(int rowA, int rowB) {
+                return keys[rowA] < keys[rowB] ? -1 : (keys[rowA] == keys[rowB] ? 0 : 1);
+            }
+        };
+    }
+}
@@ -7,7 +7,7 @@ import javax.servlet.http.HttpServletRequest;
 import net.sf.dynamicreports.report.base.expression.AbstractValueFormatter;
 import net.sf.dynamicreports.report.definition.ReportParameters;
 import net.sf.dynamicreports.report.definition.expression.DRIValueFormatter;
-import net.sourceforge.pagesdialect.TypeFormatter;
+import net.sourceforge.pagesdialect.util.TypeFormatter;
 import org.springframework.web.servlet.support.RequestContextUtils;
 
 /**